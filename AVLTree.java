@@ -1,3 +1,15 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  *
  * AVLTree
@@ -13,6 +25,94 @@ public class AVLTree {
 	private IAVLNode min; //node with min key in tree
 	private IAVLNode max; //node with max key in tree
 	private int size; //the size of the tree
+	private final boolean sharedVirtual; //true if all virtual children are the shared VIRTUAL_NODE
+	private AVLTreeMetrics metrics; //null unless enableMetrics() was called
+	private Aggregate<Object> aggregate; //null unless setAggregate was called
+	private AVLTreeCache cache; //null unless enableCache was called
+	
+	private static final IAVLNode VIRTUAL_NODE = new VirtualNode(); //the shared immutable virtual leaf
+	
+  /**
+   * public AVLTree()
+   *
+   * creates an empty tree in which every virtual child is one shared immutable virtual node,
+   * so inserting a key allocates a single node
+   */
+  public AVLTree() {
+	  this(true);
+  }
+  
+  /**
+   * public AVLTree(boolean sharedVirtualNodes)
+   *
+   * creates an empty tree. if sharedVirtualNodes is false every real node allocates
+   * its own two virtual children (the original layout, three objects per key)
+   */
+  public AVLTree(boolean sharedVirtualNodes) {
+	  this.sharedVirtual = sharedVirtualNodes;
+  }
+  
+  /**
+   * public AVLTreeMetrics enableMetrics()
+   *
+   * starts counting rotations, rank changes, search route lengths, joins, splits and node allocations
+   * of this tree and returns the counters (the same ones if metrics are already on).
+   * with metrics off each of these places costs one null check
+   */
+  public AVLTreeMetrics enableMetrics() {
+	  if (metrics==null)
+		  metrics = new AVLTreeMetrics();
+	  return metrics;
+  }
+  
+  /**
+   * public void disableMetrics()
+   *
+   * stops counting. counters returned by enableMetrics keep their values
+   */
+  public void disableMetrics() {
+	  metrics = null;
+  }
+  
+  /**
+   * public AVLTreeMetrics getMetrics()
+   *
+   * returns the counters of this tree, or null if metrics are off
+   */
+  public AVLTreeMetrics getMetrics() {
+	  return metrics;
+  }
+  
+  /**
+   * public AVLTreeCache enableCache(int capacity)
+   *
+   * puts a cache of up to capacity items in front of search and returns it (the same one, whatever
+   * its capacity, if the cache is already on). see AVLTreeCache for how it is kept up to date.
+   * with the cache off each of these places costs one null check
+   */
+  public AVLTreeCache enableCache(int capacity) {
+	  if (cache==null)
+		  cache = new AVLTreeCache(capacity);
+	  return cache;
+  }
+  
+  /**
+   * public void disableCache()
+   *
+   * removes the cache, search goes to the tree again
+   */
+  public void disableCache() {
+	  cache = null;
+  }
+  
+  /**
+   * public AVLTreeCache getCache()
+   *
+   * returns the cache of this tree, or null if it has none
+   */
+  public AVLTreeCache getCache() {
+	  return cache;
+  }
 	
   /**
    * public boolean empty()
@@ -32,14 +132,25 @@ public class AVLTree {
    */
   public String search(int k)
   {
+	if (metrics!=null)
+		metrics.search(routeLength(k));
+	if (cache!=null) {
+		int slot = cache.find(k);
+		if (slot>=0)
+			return cache.info(slot);
+	}
 	if (empty())
 		return null;
 	IAVLNode node = root;
 	while (node.isRealNode())  
 	{
-		if (node.getKey()==k) 
+		int key = node.getKey(); //reading the key once per level
+		if (key==k) {
+			if (cache!=null)
+				cache.put(k, node.getValue());
 			return node.getValue();
-		if (node.getKey()>k)
+		}
+		if (key>k)
 			node=node.getLeft();
 		else node =node.getRight();
 	}
@@ -47,24 +158,70 @@ public class AVLTree {
   }
   /**
    * private IAVLNode searchNode(int k,amount)
-   * returns the node with key k, if not in tree returns virtual node
+   * returns the node with key k, if not in tree returns the last real node in the route
+   * (the node that k would be inserted under)
    * updating the nodes's size in the search route from root to k (not including k)
-   * if called by insert amount is 1
-   * if called by delete amount is -1
+   * if called by insert amount is 1, if called by delete amount is -1,
+   * so the route is walked once. the caller rolls the sizes back with addSize if k was (not) found
    * if called for a normal search amount is 0
   **/
   private IAVLNode searchNode(int k, int amount) {
 	  IAVLNode node = root;
+	  IAVLNode parent = null;
 	  while (node.isRealNode())
 			{
-			if (node.getKey()==k)
+			int key = node.getKey();
+			if (key==k)
 				return node; //k was found returning the node
 			node.setSize(node.getSize()+amount); //updating node's size to size+ amount
-			if (k<node.getKey())  //normal search
+			parent = node;
+			if (k<key)  //normal search
 				node = node.getLeft();
 			else node = node.getRight();
 			}
-	return node; //returning a virtual node
+	return parent; //k was not found, returning the parent of the virtual node we reached
+  }
+  
+  /**
+   * private int routeLength(int k)
+   * returns the number of nodes a search for k visits (for the metrics)
+  **/
+  private int routeLength(int k) {
+	  int length = 0;
+	  IAVLNode node = root;
+	  while (node!=null && node.isRealNode()) {
+		  length++;
+		  int key = node.getKey();
+		  if (key==k)
+			  break;
+		  node = k<key ? node.getLeft() : node.getRight();
+	  }
+	  return length;
+  }
+  
+  /**
+   * private void addSize(IAVLNode node, int amount)
+   * adds amount to the size of node and of all its ancestors up to the root
+   * (used to roll back the sizes searchNode changed)
+  **/
+  private void addSize(IAVLNode node, int amount) {
+	  while (node!=null) {
+		  node.setSize(node.getSize()+amount);
+		  node = node.getParent();
+	  }
+  }
+  
+  /**
+   * private IAVLNode virtualNode()
+   * returns a virtual node to be used as a child of a real node:
+   * the shared virtual node, or a new one if the tree uses the original layout
+  **/
+  private IAVLNode virtualNode() {
+	  if (sharedVirtual)
+		  return VIRTUAL_NODE;
+	  if (metrics!=null)
+		  metrics.nodeAllocated();
+	  return new AVLNode();
   }
 
   /**
@@ -76,31 +233,34 @@ public class AVLTree {
    * returns -1 if an item with key k already exists in the tree.
    */
    public int insert(int k, String i) {
-	 IAVLNode newNode = new AVLNode(k,i); //creating a new leaf
+	 if (metrics!=null)
+		 metrics.search(routeLength(k));
 	 if (empty()) { //if the tree is empty updating the new root
+			IAVLNode newNode = new AVLNode(k,i); //creating a new leaf
 			this.root=newNode;//newNode default subtree size is 1
 			this.size = 1; //updating the necessary fields
 			this.min = newNode;
 			this.max = newNode;
+			if (aggregate!=null)
+				updateAggregates(newNode);
 			return 0;
 	 }
 
 	//finding the place to be inserted
-	IAVLNode node = searchNode(k,0); //we don't know if k is already in tree so we don't update sizes yet.  
-	if (node.isRealNode())//k was already in tree. 
+	IAVLNode parent = searchNode(k,1); //updating the sizes in the route assuming k is not in the tree
+	if (parent.getKey()==k) {//k was already in tree, rolling back the sizes of its ancestors
+		addSize(parent.getParent(), -1);
 		return -1;
+	}
 	 
 	 //if we are here k is not in the tree already. needs to be inserted
-	 //node is a virtual Node, setting parent and child
-	 IAVLNode parent = node.getParent();
-	 node = newNode;
+	 //parent is the last real node in the search route, setting parent and child
+	 IAVLNode newNode = new AVLNode(k,i); //creating a new leaf
+	 IAVLNode node = newNode;
 	 if (k<parent.getKey())
 		 parent.setLeft(node);
 	 else parent.setRight(node);
 	 
-	 //after k was inserted to tree we update size of each node
-	 //in the root from root to k, and update the size of the overall tree
-	 searchNode(k, 1);
 	 size ++;
 	 //updating min and max
 	 if (min!=null && max!=null) {   //in split and join, it's possible to call insert 
@@ -109,19 +269,27 @@ public class AVLTree {
 		 if (k>max.getKey())
 			 max = newNode;
 	 }
-	 return balanceIn(node);
+	 if (aggregate!=null)
+		 updateAggregate(node);
+	 int count = balanceIn(node);
+	 if (aggregate!=null) //the route from the new node up, rotations fixed the nodes they moved off it
+		 updateAggregates(node.getParent());
+	 return count;
 
    }
-   private int balanceIn(IAVLNode child) { 
+   
+   private int balanceIn(IAVLNode child) {  
 	   int count=0;
 	   IAVLNode parent = child.getParent();
 	   while (parent!=null && parent.getHeight()==child.getHeight()) {
 		   char childType = 'R'; //checking if child is a right child or a left child
-			 if (parent.getLeft().getKey() == child.getKey())
+			 if (parent.getLeft()==child)
 				 childType = 'L';
 			int caseNum = checkCaseIn(child,parent,childType);
 				 if (caseNum==0) { //case 0 need to promote parent
 					 parent.setHeight(parent.getHeight()+1);  //promoting parent
+					 if (metrics!=null)
+						 metrics.rankChanges(1, 0);
 					 child = parent; //problem could now be between parent and his parent
 					 parent = child.getParent(); //updating child and parent
 					 count++;
@@ -131,6 +299,10 @@ public class AVLTree {
 					 if (childType=='L') 
 						 rightRotation(parent); //doing a rotation between parent and left child 
 					 else leftRotation(parent); //doing a rotation between parent and right child 
+					 if (metrics!=null) {
+						 metrics.rankChanges(0, 1);
+						 metrics.rotations(1, 0);
+					 }
 					 return count+2; //problem solved returning the count
 						 
 				 }
@@ -147,6 +319,10 @@ public class AVLTree {
 						 rightRotation(child);
 						 leftRotation(parent);
 					 }
+					 if (metrics!=null) {
+						 metrics.rankChanges(1, 2);
+						 metrics.rotations(0, 1);
+					 }
 					 return count+5; //problem solved returning the count
 				 } 
 				 else {//caseNum == 3
@@ -154,12 +330,16 @@ public class AVLTree {
 					 if (childType=='L') 
 						 rightRotation(parent);
 					 else leftRotation(parent);
+					 if (metrics!=null) {
+						 metrics.rankChanges(1, 0);
+						 metrics.rotations(1, 0);
+					 }
 					 count = count + 2;
 					//problem not solved pointers changed during rotation
 					 parent = child.getParent();  //updating the new parent 
 				 }
 			 }
-		return count;	
+	   return count;	
 		 
    }
    
@@ -196,12 +376,18 @@ public class AVLTree {
    */
    public int delete(int k)
    {
+	   if (metrics!=null)
+		   metrics.search(routeLength(k));
 	   if (empty()) 
 			return -1;
 	   //find node to delete
-	   IAVLNode node = searchNode(k, 0); //we don't know if k in tree so we don't update sizes on the route yet
-	   if (!node.isRealNode()) //if node was not found
+	   IAVLNode node = searchNode(k, -1); //updating the sizes in the route assuming k is in the tree
+	   if (node.getKey()!=k) { //if node was not found, rolling back the sizes in the route
+		   addSize(node, 1);
 		   return -1;
+	   }
+	   if (cache!=null)
+		   cache.invalidate(k);
 
 	   //updating min and max
 	   if (min!=null &&  max!=null) {
@@ -212,10 +398,15 @@ public class AVLTree {
 	   }
 	   
 	   size--;
-	   node = delteNode(node); //node that returns is the node to start fixing the rank problem (could be suc, or child)
-	   if (node==null)
+	   //node that returns is the parent of the node to start fixing the rank problem from
+	   //(the deleted node's parent, or the successor's parent)
+	   IAVLNode parent = delteNode(node);
+	   if (parent==null)
 		   return 0;
-	   return balanceDel (node);
+	   int count = balanceDel (parent);
+	   if (aggregate!=null)
+		   updateAggregates(parent);
+	   return count;
    }
    
    private IAVLNode delteNode(IAVLNode node) {
@@ -223,7 +414,7 @@ public class AVLTree {
 	   IAVLNode parent = node.getParent();
 	   if (parent!=null) { //deleting node is not the root
 		   char childType = 'R';
-		   if (parent.getLeft().getKey() == node.getKey())
+		   if (parent.getLeft()==node)
 			   childType = 'L';
 		 
 		   if (nodeType.equals("leaf"))
@@ -233,7 +424,7 @@ public class AVLTree {
 			   node = deleteUnary(node,childType);
 	
 		   //nodeType is with two children			
-		   else node = deleteOther(node,childType); //the node that returns is the successor child, could be virtual  
+		   else node = deleteOther(node,childType); //the node that returns is the parent of the successor's child  
 		   return node;   
 	   }
 	   //parent == null, delete root
@@ -259,39 +450,40 @@ public class AVLTree {
 	   }
 	   
 	   //root has 2 children
-	   IAVLNode suc = successor(node); //to find successor we go right and all the way left 
-	   //need to update all the nodes in route from root to suc, to size--
-	   searchNode(suc.getKey(), -1);
+	   IAVLNode suc = successorDel(node); //to find successor we go right and all the way left  
+	   
 		 //successor can only have right child - means successor is unary (right child can be virtual)
-		 if (suc.getParent().getLeft().getKey()==suc.getKey()) //suc is left child
+		 if (suc.getParent().getLeft()==suc) //suc is left child
 			 suc.getParent().setLeft(suc.getRight());
 		 else suc.getParent().setRight(suc.getRight()); //suc is a right child
-		 IAVLNode returnNode = suc.getRight(); //return node is node to start balancing. could be a virtual node
+		 //return node is the parent of the node to start balancing (suc's right child, could be virtual).
+		 //if suc was node's right child, suc replaces node and becomes that parent
+		 IAVLNode returnNode = suc.getParent();
+		 if (returnNode==node)
+			 returnNode = suc;
 		 
 		 //suc was deleted from tree because no one points at him
 		 //updating the suc to have his parent size,height and children
 		 suc.setHeight(node.getHeight()); //suc will replace node, we update suc rank.. 
 		 suc.setLeft(node.getLeft());
 		 suc.setRight(node.getRight());
-		 suc.setSize(node.getSize());
+		 suc.setSize(node.getSize()-1); //searchNode didn't update node's size
 		 suc.setParent(null);
 		 this.root = suc;
 		 return returnNode;
    }
 	   
    private IAVLNode deleteLeaf(IAVLNode node,char childType) {
-	   searchNode(node.getKey(), -1); //need to update all the nodes in route from root to node, to size--
 	   IAVLNode parent = node.getParent();
-	   IAVLNode virtNode = new AVLNode(); //creating a new virtual node
+	   IAVLNode virtNode = virtualNode(); //the virtual node replacing the leaf
 	   if (childType=='R')  
 			parent.setRight(virtNode);  
 	   else 
 		   parent.setLeft(virtNode);  
-	   return virtNode;
+	   return parent;
    }
    
    private IAVLNode deleteUnary (IAVLNode node, char childType) {
-	   searchNode(node.getKey(), -1); //need to update all the nodes in route from root to node, to size--
 	   IAVLNode parent = node.getParent();
 	   if (childType=='R') {
 		   //the node is unary and we check if it has right or left child
@@ -310,30 +502,48 @@ public class AVLTree {
 				 parent.setLeft(node.getLeft()); //deleting node, linking node.leftchild to node.parent
 				 node = node.getLeft(); } //keeping the new node, to fix ranking problem 
 			 }
-	   return node;
+	   return parent;
    }
    
    private IAVLNode deleteOther(IAVLNode node, char childType) {
-	   IAVLNode suc = successor(node);//to find suc we go to right child and all the way left
-	   searchNode(suc.getKey(), -1); //need to update all the nodes in route from suc to node, to size--
+	   IAVLNode suc = successorDel(node);//to find suc we go to right child and all the way left
+	   
 	   IAVLNode parent = node.getParent();
 		 //successor can only have right child - means suc is unary (could be virtual)
-		 if (suc.getParent().getLeft().getKey()==suc.getKey()) //suc is left child
+		 if (suc.getParent().getLeft()==suc) //suc is left child
 			 suc.getParent().setLeft(suc.getRight());
 		 else suc.getParent().setRight(suc.getRight()); //suc is a right child
-		 IAVLNode returnNode = suc.getRight(); //returnNode is the node to start balancing. could be a virtual child
+		 //returnNode is the parent of the node to start balancing (suc's right child, could be virtual)
+		 IAVLNode returnNode = suc.getParent();
+		 if (returnNode==node) //suc was node's right child, suc replaces node
+			 returnNode = suc;
 		 //suc was deleted because no on points at him anymore
 		 
 		 suc.setHeight(node.getHeight()); //suc will replace node, we update suc rank
 		 suc.setLeft(node.getLeft());
 		 suc.setRight(node.getRight());
-		 suc.setSize(node.getSize());
+		 suc.setSize(node.getSize()-1); //searchNode didn't update node's size
 		 if (childType=='R') 
 			 parent.setRight(suc);
 		 else parent.setLeft(suc);
 		 return returnNode;
    }
    
+   /**
+    * private IAVLNode successorDel(IAVLNode node)
+    * returns the successor of a node with two children, which is about to replace it.
+    * every node in the route between node and the successor loses the successor,
+    * so its size is decreased on the way down
+   **/
+   private IAVLNode successorDel(IAVLNode node) {
+	   IAVLNode suc = node.getRight();
+	   while (suc.getLeft().isRealNode()) {
+		   suc.setSize(suc.getSize()-1);
+		   suc = suc.getLeft();
+	   }
+	   return suc;
+   }
+   
    private String nodeType(IAVLNode node) {
 	   if (!node.getLeft().isRealNode() && !node.getRight().isRealNode())
 		   return "leaf";
@@ -343,22 +553,23 @@ public class AVLTree {
    }
    
    
-   private int balanceDel(IAVLNode node) { //need to fix rank from node upwards
+   private int balanceDel(IAVLNode parent) { //need to fix rank from parent's lowered child upwards
 	   int count=0;
-	   IAVLNode parent = node.getParent();
-	   if (parent==null) 
-		   return count;
 	   //checking parent rank difference with both children
 	   int difLeft = parent.getHeight()-parent.getLeft().getHeight();
 	   int difRight = parent.getHeight()-parent.getRight().getHeight();
 	   while (difLeft==3 || difRight == 3 || (difLeft==difRight && difRight==2)) { 
+		   //the lowered child is on the side with rank difference 3
+		   //(if both differences are 2 the side doesn't matter, parent is demoted)
 		   char childType = 'R';
-		   if (parent.getLeft().getKey() == node.getKey())
+		   if (difLeft==3)
 			   childType = 'L';
-		   int checkCase = checkCaseDel(node);
+		   int checkCase = checkCaseDel(parent);
 		   if (checkCase == 1) {
 			   parent.setHeight(parent.getHeight()-1); //demoting parent
-			   count++; //problem could be between parent and his parent, updating parent and node outside the ifs. 
+			   if (metrics!=null)
+				   metrics.rankChanges(0, 1);
+			   count++; //problem could be between parent and his parent, updating parent and node outside the ifs.  
 		   }
 		   else if (checkCase==2) {
 			   		parent.setHeight(parent.getHeight()-1); //demote parent
@@ -370,6 +581,10 @@ public class AVLTree {
 			   			parent.getLeft().setHeight(parent.getLeft().getHeight()+1); //promote node's brother
 			   			rightRotation(parent);
 			   }
+			   		if (metrics!=null) {
+			   			metrics.rankChanges(1, 1);
+			   			metrics.rotations(1, 0);
+			   		}
 			   return count+3;    
 		   }
 		   else if (checkCase==3) {
@@ -378,6 +593,10 @@ public class AVLTree {
 				   leftRotation(parent);
 			   else //childType=='R'
 				   rightRotation(parent);
+			   if (metrics!=null) {
+				   metrics.rankChanges(0, 2);
+				   metrics.rotations(1, 0);
+			   }
 			   count = count + 3; 
 			   //after rotation node is one level deeper in tree
 			   //that is why we move one level up in tree
@@ -399,11 +618,14 @@ public class AVLTree {
 			   }
 			   //after rotation node is one level deeper in tree
 			   //that is why we move one level up in tree
+			   if (metrics!=null) {
+				   metrics.rankChanges(1, 3);
+				   metrics.rotations(0, 1);
+			   }
 			   parent = parent.getParent();   
 			   count = count + 6;
 		   }
-		   node = parent; //updating node and parent, to check the problem higher in the tree
-		   parent = parent.getParent();
+		   parent = parent.getParent(); //moving up, to check the problem higher in the tree
 		   if (parent==null) break; //we finished balancing the tree, because parent is root
 		   difLeft = parent.getHeight()-parent.getLeft().getHeight();
 		   difRight = parent.getHeight()-parent.getRight().getHeight();
@@ -412,8 +634,7 @@ public class AVLTree {
 	   return count;
    }
    
-   private int checkCaseDel(IAVLNode node) {//cases are numbered as in AVL presentation
-	   IAVLNode parent = node.getParent();
+   private int checkCaseDel(IAVLNode parent) {//cases are numbered as in AVL presentation
 	   int difLeft = parent.getHeight()-parent.getLeft().getHeight();
 	   int difRight = parent.getHeight()-parent.getRight().getHeight();
 	   if (difLeft==difRight) //and difRight==2 
@@ -454,7 +675,7 @@ public class AVLTree {
 	   //while node is a right child we need to move upwards until node is a left child
 	   IAVLNode rightChild = node;
 	   IAVLNode parent = node.getParent();
-	   while (parent!=null && parent.getRight().getKey()==rightChild.getKey()) {
+	   while (parent!=null && parent.getRight()==rightChild) {
 		   rightChild = parent;
 		   parent = parent.getParent();
 	   }
@@ -471,7 +692,7 @@ public class AVLTree {
 	   //while node is a left child we need to move upwards until node is a right child
 	   IAVLNode leftChild = node;
 	   IAVLNode parent = node.getParent();
-	   while (parent!=null && parent.getLeft().getKey()==leftChild.getKey()) {
+	   while (parent!=null && parent.getLeft()==leftChild) {
 		   leftChild = parent;
 		   parent = parent.getParent();
 	   }
@@ -506,6 +727,168 @@ public class AVLTree {
 	   return this.max.getValue(); 
    }
 
+   /**
+    * public IAVLNode pollFirst()
+    *
+    * removes the item with the smallest key from the tree and returns its node, or null if the tree is empty.
+    * the node is returned detached, as a single leaf (no parent, virtual children, size 1, rank 0).
+    * it starts from the cached min node instead of searching from the root: the min has no left child,
+    * so it is replaced by its right child and the new min is that child (a leaf) or the old parent, in O(1).
+    * the sizes of its ancestors are decreased on the way up, rebalancing is amortized O(1).
+    */
+   public IAVLNode pollFirst() {
+	   if (empty())
+		   return null;
+	   IAVLNode node = min;
+	   IAVLNode child = node.getRight();
+	   min = child.isRealNode() ? child : node.getParent();
+	   removeEnd(node, child);
+	   return detach(node);
+   }
+   
+   /**
+    * public IAVLNode pollLast()
+    *
+    * removes the item with the largest key from the tree and returns its node, or null if the tree is empty.
+    * the mirror image of pollFirst, starting from the cached max node.
+    */
+   public IAVLNode pollLast() {
+	   if (empty())
+		   return null;
+	   IAVLNode node = max;
+	   IAVLNode child = node.getLeft();
+	   max = child.isRealNode() ? child : node.getParent();
+	   removeEnd(node, child);
+	   return detach(node);
+   }
+   
+   private IAVLNode detach(IAVLNode node) { //a removed node as a single leaf, nothing of the tree is reachable from it
+	   node.setParent(null);
+	   node.setLeft(virtualNode());
+	   node.setRight(virtualNode());
+	   node.setSize(1);
+	   node.setHeight(0);
+	   if (aggregate!=null)
+		   updateAggregate(node);
+	   return node;
+   }
+   
+   private void removeEnd(IAVLNode node, IAVLNode child) { //replacing the min or max node by its only child (could be virtual)
+	   IAVLNode parent = node.getParent();
+	   size--;
+	   if (cache!=null)
+		   cache.invalidate(node.getKey());
+	   if (parent==null) { //node was the root, child is all that's left
+		   root = child.isRealNode() ? child : null;
+		   if (root!=null) {
+			   root.setParent(null);
+			   min = root;
+			   max = root;
+		   }
+		   else {
+			   min = null;
+			   max = null;
+		   }
+		   return;
+	   }
+	   if (parent.getLeft()==node)
+		   parent.setLeft(child);
+	   else parent.setRight(child);
+	   addSize(parent, -1);
+	   balanceDel(parent);
+	   if (aggregate!=null)
+		   updateAggregates(parent);
+   }
+
+   /**
+    * public IAVLNode floor(int k)
+    *
+    * Returns the node with the largest key <= k, or null if there is none. O(log n)
+    */
+   public IAVLNode floor(int k)
+   {
+	   return nearest(k, true, true);
+   }
+   
+   /**
+    * public IAVLNode ceiling(int k)
+    *
+    * Returns the node with the smallest key >= k, or null if there is none. O(log n)
+    */
+   public IAVLNode ceiling(int k)
+   {
+	   return nearest(k, false, true);
+   }
+   
+   /**
+    * public IAVLNode lower(int k)
+    *
+    * Returns the node with the largest key < k, or null if there is none. O(log n)
+    */
+   public IAVLNode lower(int k)
+   {
+	   return nearest(k, true, false);
+   }
+   
+   /**
+    * public IAVLNode higher(int k)
+    *
+    * Returns the node with the smallest key > k, or null if there is none. O(log n)
+    */
+   public IAVLNode higher(int k)
+   {
+	   return nearest(k, false, false);
+   }
+   
+   /** private IAVLNode nearest(int k, boolean below, boolean inclusive)
+    * searches k and returns the closest node below k (or above k if !below),
+    * or the node with key k itself if inclusive. returns null if there is no such node
+   **/
+   private IAVLNode nearest(int k, boolean below, boolean inclusive) {
+	   IAVLNode best = null;
+	   IAVLNode node = root;
+	   while (node!=null && node.isRealNode()) {
+		   int key = node.getKey();
+		   if (key==k && inclusive)
+			   return node;
+		   if (below ? key<k : key>k) { //node is a candidate, a closer one can only be towards k
+			   best = node;
+			   node = below ? node.getRight() : node.getLeft();
+		   }
+		   else node = below ? node.getLeft() : node.getRight(); //node is on the wrong side of k
+	   }
+	   return best;
+   }
+   
+   /**
+    * public int rangeScan(int lo, int hi, IntObjConsumer consumer)
+    *
+    * passes the items with lo <= key <= hi to consumer in increasing key order,
+    * walking from the first of them with successor, in O(log n + k) time for k items.
+    * returns the number of items passed. the consumer must not modify the tree
+    */
+   public int rangeScan(int lo, int hi, IntObjConsumer consumer)
+   {
+	   int count = 0;
+	   if (lo>hi)
+		   return 0;
+	   for (IAVLNode node = ceiling(lo); node!=null && node.getKey()<=hi; node = successor(node)) {
+		   consumer.accept(node.getKey(), node.getValue());
+		   count++;
+	   }
+	   return count;
+   }
+   
+   /**
+    * public Cursor cursor()
+    *
+    * Returns a new cursor over the tree, not positioned yet (see Cursor.seek)
+    */
+   public Cursor cursor()
+   {
+	   return new Cursor();
+   }
+
   /**
    * public int[] keysToArray()
    *
@@ -515,30 +898,88 @@ public class AVLTree {
   public int[] keysToArray()
   {
       int[] arr = new int[size]; 
-      if (!empty())
-    	  toArrayRec(root, arr,null, 0, 'k');
+      toArrays(arr, null, null);
       return arr;               
   }
   
-  /** private int toArrayRec(IAVLNode node, int[] arrKeys, String[] arrInfo, int i, char type)
-   * Recursive function. type indicate whether it's keys or info (k-for keys i-for info)
-   * Changing one of the arrays in place, 
-   * the array that is changed matches to type (i/k accordingly)
-   * the other arr is null
-   * i indicates the next empty place in arr
+  /**
+   * public int[] keysToArray(ForkJoinPool pool)
+   *
+   * like keysToArray(), filling the array in parallel on pool (see entriesToArrays)
+   */
+  public int[] keysToArray(ForkJoinPool pool)
+  {
+	  int[] arr = new int[size];
+	  toArrays(arr, null, pool);
+	  return arr;
+  }
+  
+  /** private void toArrays(int[] arrKeys, String[] arrInfo, ForkJoinPool pool)
+   * fills the non-null arrays in order, on pool if it isn't null
   **/
-  private int toArrayRec(IAVLNode node, int[] arrKeys, String[] arrInfo, int i, char type) { //complexity- O(n) 
-	  if (!node.isRealNode())
-		  return i;
-	  i = toArrayRec(node.getLeft(),arrKeys,arrInfo,i,type);
-	  if (type=='k')
-	  	 arrKeys[i] = node.getKey();
+  private void toArrays(int[] arrKeys, String[] arrInfo, ForkJoinPool pool) {
+	  if (empty())
+		  return;
+	  if (pool==null || size<ARRAY_CUTOFF)
+		  toArrays(root, 0, arrKeys, arrInfo);
 	  else
-	  	 arrInfo[i] = node.getValue();
-	  i++;
-	  i = toArrayRec(node.getRight(),arrKeys,arrInfo,i,type);
-	  return i;
+		  pool.invoke(new ToArraysTask(root, 0, arrKeys, arrInfo));
+  }
+  
+  /** private void toArrays(IAVLNode node, int i, int[] arrKeys, String[] arrInfo)
+   * fills the non-null arrays with node's subtree in order starting at i,
+   * with an explicit stack instead of recursion
+  **/
+  private void toArrays(IAVLNode node, int i, int[] arrKeys, String[] arrInfo) {
+	  InOrderStack walk = new InOrderStack(node, 0);
+	  for (node = walk.next(); node!=null; node = walk.next()) {
+		  if (arrKeys!=null)
+			  arrKeys[i] = node.getKey();
+		  if (arrInfo!=null)
+			  arrInfo[i] = node.getValue();
+		  i++;
+	  }
+  }
+  
+  /**
+   * private class ToArraysTask
+   *
+   * copies a subtree to the slice of the arrays starting at offset. the size of the left subtree
+   * gives the node's own place, so the left subtree is forked and both sides write disjoint slices.
+   * subtrees smaller than ARRAY_CUTOFF are copied on the current thread.
+   */
+  private class ToArraysTask extends RecursiveAction {
+	  private static final long serialVersionUID = 1L;
+	  private final IAVLNode node;
+	  private final int offset;
+	  private final int[] arrKeys;
+	  private final String[] arrInfo;
+	  
+	  ToArraysTask(IAVLNode node, int offset, int[] arrKeys, String[] arrInfo) {
+		  this.node = node;
+		  this.offset = offset;
+		  this.arrKeys = arrKeys;
+		  this.arrInfo = arrInfo;
+	  }
+	  
+	  protected void compute() {
+		  if (node.getSize()<ARRAY_CUTOFF) {
+			  toArrays(node, offset, arrKeys, arrInfo);
+			  return;
+		  }
+		  int i = offset+node.getLeft().getSize();
+		  if (arrKeys!=null)
+			  arrKeys[i] = node.getKey();
+		  if (arrInfo!=null)
+			  arrInfo[i] = node.getValue();
+		  ToArraysTask left = new ToArraysTask(node.getLeft(), offset, arrKeys, arrInfo);
+		  left.fork();
+		  new ToArraysTask(node.getRight(), i+1, arrKeys, arrInfo).compute();
+		  left.join();
+	  }
   }
+  
+  private static final int ARRAY_CUTOFF = 1<<15; //copying smaller subtrees is cheaper than a task
 
   /**
    * public String[] infoToArray()
@@ -550,10 +991,106 @@ public class AVLTree {
   public String[] infoToArray()
   {
 	  String[] arr = new String[size]; 
-      if (!empty())
-      	toArrayRec(root,null,arr, 0, 'v');
+      toArrays(null, arr, null);
       return arr;                   
   }
+  
+  /**
+   * public String[] infoToArray(ForkJoinPool pool)
+   *
+   * like infoToArray(), filling the array in parallel on pool (see entriesToArrays)
+   */
+  public String[] infoToArray(ForkJoinPool pool)
+  {
+	  String[] arr = new String[size];
+	  toArrays(null, arr, pool);
+	  return arr;
+  }
+  
+  /**
+   * public int entriesToArrays(int[] keys, String[] infos)
+   *
+   * copies the keys and the info of all items, sorted by key, to the start of keys and infos
+   * in a single traversal. returns the number of items copied.
+   *
+   * precondition: keys.length >= size() and infos.length >= size() (throws IllegalArgumentException otherwise)
+   */
+  public int entriesToArrays(int[] keys, String[] infos)
+  {
+	  return entriesToArrays(keys, infos, null);
+  }
+  
+  /**
+   * public int entriesToArrays(int[] keys, String[] infos, ForkJoinPool pool)
+   *
+   * like entriesToArrays(keys, infos), in parallel on pool. every node's place in the arrays is
+   * its rank, known from the subtree sizes before it is visited, so the subtrees of the top levels
+   * are copied to disjoint slices of the arrays at the same time.
+   */
+  public int entriesToArrays(int[] keys, String[] infos, ForkJoinPool pool)
+  {
+	  if (keys.length<size || infos.length<size)
+		  throw new IllegalArgumentException("arrays of length "+keys.length+" and "+infos.length+" can't hold "+size+" items");
+	  toArrays(keys, infos, pool);
+	  return size;
+  }
+  
+   /**
+    * public void forEach(IntObjConsumer consumer)
+    *
+    * passes every item to consumer in increasing key order, keys and info in one pass
+    * without building an array. the consumer must not modify the tree
+    */
+   public void forEach(IntObjConsumer consumer)
+   {
+	   InOrderStack walk = new InOrderStack(0);
+	   for (IAVLNode node = walk.next(); node!=null; node = walk.next())
+		   consumer.accept(node.getKey(), node.getValue());
+   }
+   
+   /**
+    * public EntryIterator iterator()
+    *
+    * Returns a lazy iterator over the keys in increasing order. its info() is the info of the
+    * key nextInt returned last, so keys and info are read in the same pass.
+    * the tree must not be modified while it is used
+    */
+   public EntryIterator iterator()
+   {
+	   return new EntryIterator();
+   }
+   
+   /**
+    * public Spliterator<IAVLNode> spliterator()
+    *
+    * Returns a spliterator over the nodes in increasing key order. it splits its range of ranks
+    * in half, finding the first node of each half with the subtree sizes, so parallel streams
+    * get parts of equal size. the tree must not be modified while it is used
+    */
+   public Spliterator<IAVLNode> spliterator()
+   {
+	   return new EntrySpliterator(0, size, null);
+   }
+   
+   /**
+    * public Stream<IAVLNode> stream()
+    *
+    * Returns a sequential stream of the nodes in increasing key order (see spliterator)
+    */
+   public Stream<IAVLNode> stream()
+   {
+	   return StreamSupport.stream(spliterator(), false);
+   }
+   
+   /**
+    * public Stream<IAVLNode> parallelStream()
+    *
+    * Returns a parallel stream of the nodes, in increasing key order where the stream keeps order
+    */
+   public Stream<IAVLNode> parallelStream()
+   {
+	   return StreamSupport.stream(spliterator(), true);
+   }
 
    /**
     * public int size()
@@ -568,6 +1105,187 @@ public class AVLTree {
 	   return size;
    }
    
+   /**
+    * public int select(int rank)
+    *
+    * Returns the key with the given rank, that is, the key with exactly rank smaller keys in the tree
+    * (select(0) is the min key). O(log n) using the subtree sizes.
+    *
+    * precondition: 0 <= rank < size() (throws IndexOutOfBoundsException otherwise)
+    * postcondition: none
+    */
+   public int select(int rank)
+   {
+	   if (rank<0 || rank>=size)
+		   throw new IndexOutOfBoundsException("rank "+rank+" out of range for size "+size);
+	   IAVLNode node = root;
+	   while (true) {
+		   int leftSize = node.getLeft().getSize();
+		   if (rank==leftSize)
+			   return node.getKey();
+		   if (rank<leftSize)
+			   node = node.getLeft();
+		   else {
+			   rank -= leftSize+1; //skipping the left subtree and node
+			   node = node.getRight();
+		   }
+	   }
+   }
+   
+   /**
+    * public int rank(int k)
+    *
+    * Returns the number of keys in the tree smaller than k (whether or not k is in the tree),
+    * so select(rank(k)) == k for every key k in the tree. O(log n).
+    *
+    * precondition: none
+    * postcondition: none
+    */
+   public int rank(int k)
+   {
+	   return countBelow(k, false);
+   }
+   
+   /**
+    * public int countInRange(int lo, int hi)
+    *
+    * Returns the number of keys k in the tree with lo <= k <= hi, or 0 if lo > hi. O(log n).
+    *
+    * precondition: none
+    * postcondition: none
+    */
+   public int countInRange(int lo, int hi)
+   {
+	   if (lo>hi)
+		   return 0;
+	   return countBelow(hi, true)-countBelow(lo, false);
+   }
+   
+   /**
+    * public int keyAtPercentile(double p)
+    *
+    * Returns the key at percentile p (0 <= p <= 100) by the nearest-rank method:
+    * the smallest key such that at least p percent of the keys are smaller or equal to it
+    * (p = 0 gives the min key, p = 100 the max key). O(log n).
+    *
+    * precondition: the tree is not empty (throws NoSuchElementException otherwise),
+    *               0 <= p <= 100 (throws IllegalArgumentException otherwise)
+    * postcondition: none
+    */
+   public int keyAtPercentile(double p)
+   {
+	   if (!(p>=0 && p<=100)) //also rejects NaN
+		   throw new IllegalArgumentException("percentile "+p+" is not between 0 and 100");
+	   if (empty())
+		   throw new NoSuchElementException("the tree is empty");
+	   int rank = (int)Math.ceil(p/100*size)-1;
+	   return select(Math.max(0, Math.min(rank, size-1)));
+   }
+   
+   /** private int countBelow(int k, boolean inclusive)
+    * returns the number of keys smaller than k (smaller or equal to k if inclusive),
+    * adding up the left subtrees of the route to k
+   **/
+   private int countBelow(int k, boolean inclusive) {
+	   int count = 0;
+	   IAVLNode node = root;
+	   while (node!=null && node.isRealNode()) {
+		   int key = node.getKey();
+		   if (k<key || (k==key && !inclusive))
+			   node = node.getLeft();
+		   else {
+			   count += node.getLeft().getSize()+1; //node and its left subtree are below k
+			   if (key==k)
+				   return count;
+			   node = node.getRight();
+		   }
+	   }
+	   return count;
+   }
+   
+   /**
+    * public void setAggregate(Aggregate<?> aggregate)
+    *
+    * makes the tree keep aggregate for every subtree, next to its size: insert, delete, the rotations,
+    * join, split and the set operations update it on the nodes they change, at O(1) extra combines per node.
+    * computes it for the whole tree now, O(n). null stops keeping an aggregate.
+    * trees made by split and extractRange keep the same aggregate.
+    */
+   @SuppressWarnings("unchecked")
+   public void setAggregate(Aggregate<?> aggregate) {
+	   this.aggregate = (Aggregate<Object>) aggregate;
+	   if (aggregate!=null && !empty())
+		   recomputeAggregates(root);
+   }
+   
+   /**
+    * public <A> A aggregate(int lo, int hi)
+    *
+    * Returns the combination, in key order, of the values of the items with lo <= key <= hi
+    * (the identity if there are none or lo > hi). O(log n) combines.
+    * A is the type of the tree's aggregate.
+    *
+    * precondition: setAggregate was called (throws IllegalStateException otherwise)
+    */
+   @SuppressWarnings("unchecked")
+   public <A> A aggregate(int lo, int hi) {
+	   if (aggregate==null)
+		   throw new IllegalStateException("the tree keeps no aggregate");
+	   IAVLNode node = root;
+	   while (node!=null && node.isRealNode()) { //finding the highest node in the range
+		   if (node.getKey()<lo)
+			   node = node.getRight();
+		   else if (node.getKey()>hi)
+			   node = node.getLeft();
+		   else break;
+	   }
+	   if (lo>hi || node==null || !node.isRealNode())
+		   return (A) aggregate.identity();
+	   //the keys >= lo of its left subtree, node, and the keys <= hi of its right subtree
+	   Object below = aggregate.identity();
+	   for (IAVLNode left = node.getLeft(); left.isRealNode(); ) {
+		   if (left.getKey()>=lo) { //left and its right subtree are in the range, and come after what's collected
+			   below = aggregate.combine(aggregate.combine(itemValue(left), aggregateOf(left.getRight())), below);
+			   left = left.getLeft();
+		   }
+		   else left = left.getRight();
+	   }
+	   Object above = aggregate.identity();
+	   for (IAVLNode right = node.getRight(); right.isRealNode(); ) {
+		   if (right.getKey()<=hi) {
+			   above = aggregate.combine(above, aggregate.combine(aggregateOf(right.getLeft()), itemValue(right)));
+			   right = right.getRight();
+		   }
+		   else right = right.getLeft();
+	   }
+	   return (A) aggregate.combine(aggregate.combine(below, itemValue(node)), above);
+   }
+   
+   private Object itemValue(IAVLNode node) {
+	   return aggregate.of(node.getKey(), node.getValue());
+   }
+   
+   private Object aggregateOf(IAVLNode node) {
+	   return node.isRealNode() ? ((AVLNode) node).aggregate : aggregate.identity();
+   }
+   
+   private void updateAggregate(IAVLNode node) { //recomputing node's aggregate from its children
+	   ((AVLNode) node).aggregate = aggregate.combine(aggregate.combine(aggregateOf(node.getLeft()), itemValue(node)),
+			   aggregateOf(node.getRight()));
+   }
+   
+   private void updateAggregates(IAVLNode node) { //node and all its ancestors
+	   for (; node!=null; node = node.getParent())
+		   updateAggregate(node);
+   }
+   
+   private void recomputeAggregates(IAVLNode node) { //the whole subtree, O(n)
+	   if (!node.isRealNode())
+		   return;
+	   recomputeAggregates(node.getLeft());
+	   recomputeAggregates(node.getRight());
+	   updateAggregate(node);
+   }
 
      /**
     * public int getRoot()
@@ -586,62 +1304,74 @@ public class AVLTree {
     *
     * splits the tree into 2 trees according to the key x. 
     * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+    * the nodes of the tree are reused: every ancestor of x is joined into t1 or t2 on the way up,
+    * with ranks and sizes fixed as it goes, so the whole split is O(log n) and allocates only the two trees.
+    * this tree is left empty.
 	  * precondition: search(x) != null
     * postcondition: none
     */   
    public AVLTree[] split(int x)
    {
-	   IAVLNode node = searchNode(x,0); //assuming node is not null
-	   AVLTree t1 = new AVLTree();
-	   AVLTree t2 =  new AVLTree();
-	   if (node.getLeft().isRealNode()) {
-		   t1.root = node.getLeft();
-		   t1.size = t1.root.getSize();
-	   }
-	   if (node.getRight().isRealNode()) {
-		   t2.root = node.getRight();
-		   t2.size = t2.root.getSize();
-	   }
-	   ///t1 and t2 can still be empty but join can handle this case
-	   while (node.getParent()!=null) {
-		   IAVLNode parent = node.getParent();
-		   AVLTree tmp = new AVLTree();
-		   char childType = 'R';
-		   if (parent.getLeft().getKey()==node.getKey())
-			   childType = 'L';
-		   if (childType == 'L') {
-			   if (parent.getRight().isRealNode()) {//right child not Virtual
-				   tmp.root = parent.getRight();
-				   tmp.root.setParent(null);
-				   tmp.size = root.getSize();
-				   parent = tmp.new AVLNode(parent.getKey(),parent.getValue());
-				   //copying a new copy of node parent separate of tree 
-			   }
-			   t2.join(parent,tmp); //t1 or tmp or both could be empty
-		   }
-		   else {//childType=='R'
-			   if (parent.getLeft().isRealNode()) {
-				   tmp.root = parent.getLeft();
-				   tmp.root.setParent(null);
-				   tmp.size = root.getSize();
-				   parent = tmp.new AVLNode(parent.getKey(),parent.getValue());
-			   }
-			   t1.join(parent,tmp);
-		   }
-		   node = node.getParent();	//getting the original node.parent		   
+	   AVLTree t1 = new AVLTree(sharedVirtual);
+	   AVLTree t2 =  new AVLTree(sharedVirtual);
+	   t1.aggregate = aggregate; //splitNodes keeps the aggregates up to date
+	   t2.aggregate = aggregate;
+	   if (cache!=null) { //the nodes move to t1 and t2, setRoot(null) below clears this tree's cache
+		   t1.cache = new AVLTreeCache(cache.capacity());
+		   t2.cache = new AVLTreeCache(cache.capacity());
 	   }
-	   if (!t1.empty()) {//updating min, max, and size
-		   t1.updateMinMax();
-		   t1.size = t1.getRoot().getSize();
-	   }
-	   
-	   if (!t2.empty()) { //updating min,max, and size
-		   t2.updateMinMax();
-		   t2.size = t2.getRoot().getSize();
-	   }	
-	   
+	   if (empty())
+		   return new AVLTree[]{t1,t2};
+	   int route = metrics!=null ? routeLength(x) : 0;
+	   IAVLNode[] parts = new IAVLNode[2];
+	   IAVLNode found = splitNodes(root, x, parts);
+	   setRoot(null); //the nodes belong to t1 and t2 now, this tree must not reach them anymore
+	   if (metrics!=null) //every node on the route above x was joined into a part
+		   metrics.split(found!=null ? route-1 : route);
+	   //the roots of the parts were children in this tree, setRoot clears their parent
+	   t1.setRoot(parts[0].isRealNode() ? parts[0] : null);
+	   t2.setRoot(parts[1].isRealNode() ? parts[1] : null);
 	   return new AVLTree[]{t1,t2}; 
    }
+   /**
+    * public int deleteRange(int lo, int hi)
+    *
+    * deletes the items with lo <= key <= hi from the tree and returns how many were deleted
+    * (0 if lo > hi). built from two splits and a join, so it is O(log n) for any number of deleted keys.
+    */
+   public int deleteRange(int lo, int hi) {
+	   return extractRange(lo, hi).size;
+   }
+   
+   /**
+    * public AVLTree extractRange(int lo, int hi)
+    *
+    * removes the items with lo <= key <= hi from the tree and returns them as a new tree,
+    * which reuses their nodes (an empty tree if lo > hi). O(log n).
+    */
+   public AVLTree extractRange(int lo, int hi) {
+	   AVLTree range = new AVLTree(sharedVirtual);
+	   range.aggregate = aggregate;
+	   if (cache!=null)
+		   range.cache = new AVLTreeCache(cache.capacity());
+	   if (empty() || lo>hi)
+		   return range;
+	   IAVLNode[] parts = new IAVLNode[2];
+	   IAVLNode first = splitNodes(root, lo, parts); //the node with key lo, or null
+	   IAVLNode below = parts[0];
+	   IAVLNode last = splitNodes(parts[1], hi, parts); //the node with key hi, or null (also if lo==hi)
+	   IAVLNode middle = parts[0];
+	   IAVLNode above = parts[1];
+	   if (first!=null)
+		   middle = joinNodes(virtualNode(), first, middle);
+	   if (last!=null)
+		   middle = joinNodes(middle, last, virtualNode());
+	   IAVLNode rest = joinNodes(below, above);
+	   setRoot(rest.isRealNode() ? rest : null);
+	   range.setRoot(middle.isRealNode() ? middle : null);
+	   return range;
+   }
+   
    /**
     * public join(IAVLNode x, AVLTree t)
     *
@@ -652,6 +1382,28 @@ public class AVLTree {
     */   
    public int join(IAVLNode x, AVLTree t)
    {
+	   boolean linked = !empty() && !t.empty(); //otherwise joinTrees inserts x into the non-empty tree
+	   boolean takesT = empty() && !t.empty(); //the tree becomes t with x inserted by t
+	   if (aggregate!=null && linked) {
+		   if (t.aggregate!=aggregate) //the nodes of t hold another aggregate, or none. O(|t|)
+			   recomputeAggregates(t.root);
+		   ((AVLNode) x).aggregate = itemValue(x); //fixed below, once x has its children
+	   }
+	   int cost = joinTrees(x, t);
+	   if (metrics!=null)
+		   metrics.join(cost-1); //cost is the rank difference + 1
+	   if (t.cache!=null) //t's nodes are in this tree now
+		   t.cache.clear();
+	   if (aggregate!=null) {
+		   if (linked)
+			   updateAggregates(x); //x and its ancestors, rotations fixed the nodes they moved
+		   else if (takesT && t.aggregate!=aggregate)
+			   recomputeAggregates(root);
+	   }
+	   return cost;
+   }
+   
+   private int joinTrees(IAVLNode x, AVLTree t) {
 	   if (t.empty() && this.empty()) { //both tree are empty
 		  this.insert(x.getKey(), x.getValue());
 		  return 1;  //min,max,size are updated in insert
@@ -712,28 +1464,31 @@ public class AVLTree {
 		AVLTree t1 = this;
 		IAVLNode node = t2.getRoot();
 		int rank = rankt1;
+		//x and the tree with the smaller rank are added under every node in the route to x
+		int amount = t1.getRoot().getSize()+1;
+		if (!t1LowerRank)
+			amount = t2.getRoot().getSize()+1;
 		if ((t1SmallerKeys && t1LowerRank) || (!t1SmallerKeys && !t1LowerRank)){
 			//both cases need to go left from root (tree with bigger rank) until node with rank of root (tree with small rank)
 			if (!t1SmallerKeys) {
 				node = t1.getRoot();
 				rank = rankt2;
 			}
-			while(node.getHeight()>rank) {
+			IAVLNode parent = null;
+			while(node.getHeight()>rank) { //every node in the route will be an ancestor of x
+				node.setSize(node.getSize()+amount);
+				parent = node;
 				node = node.getLeft();
 			}
 			//node is as same rank as the root of tree with small rank (smaller tree) or minus 1
 			x.setHeight(rank+1);
-			node.getParent().setLeft(x);
+			parent.setLeft(x);
 			x.setRight(node); 
 			if (t1SmallerKeys) {
 				x.setLeft(t1.getRoot());
-				//we need to update all the nodes sizes in t2 from root to x's parent
-				//to increase size by t1.size+1
-				t2.searchNode(x.getKey(),t1.getRoot().getSize()+1);
 				t1.root = t2.root;
 			}
 			else {
-				t1.searchNode(x.getKey(), t2.getRoot().getSize()+1);
 				x.setLeft(t2.getRoot());
 				
 			}
@@ -744,19 +1499,20 @@ public class AVLTree {
 				node = t1.getRoot();
 				rank = rankt2;
 			}
-			while(node.getHeight()>rank) {
+			IAVLNode parent = null;
+			while(node.getHeight()>rank) { //every node in the route will be an ancestor of x
+				node.setSize(node.getSize()+amount);
+				parent = node;
 				node = node.getRight();
 			}
 			x.setHeight(rank+1);
-			node.getParent().setRight(x);
+			parent.setRight(x);
 			x.setLeft(node); 
 			if (t1SmallerKeys) { //root is still t1
 				x.setRight(t2.getRoot());
-				t1.searchNode(x.getKey(),t2.getRoot().getSize()+1);
 			}
 			else {
 				x.setRight(t1.getRoot());
-				t2.searchNode(x.getKey(),t1.getRoot().getSize()+1);
 				t1.root = t2.root;
 			}		
 		}
@@ -765,15 +1521,460 @@ public class AVLTree {
 		t1.balanceIn(x);
    }
    
+   /**
+    * public static AVLTree fromSorted(int[] keys, String[] infos)
+    *
+    * builds a tree of the items (keys[j], infos[j]) in O(n) time, without rebalancing.
+    * the tree is perfectly balanced: the middle item is the root of every subtree.
+    * precondition: keys are sorted in increasing order and infos.length == keys.length
+    * (throws IllegalArgumentException otherwise)
+    */
+   public static AVLTree fromSorted(int[] keys, String[] infos) {
+	   if (keys.length!=infos.length)
+		   throw new IllegalArgumentException("keys and infos have different lengths");
+	   for (int j=1; j<keys.length; j++)
+		   if (keys[j-1]>=keys[j])
+			   throw new IllegalArgumentException("keys are not sorted and distinct at index "+j);
+	   AVLTree tree = new AVLTree();
+	   if (keys.length>0) {
+		   tree.root = tree.buildRec(keys, infos, 0, keys.length-1);
+		   tree.size = keys.length;
+		   tree.updateMinMax();
+	   }
+	   return tree;
+   }
+   
+   /** private IAVLNode buildRec(int[] keys, String[] infos, int lo, int hi)
+    * returns the root of a perfectly balanced subtree of the items lo..hi.
+    * the heights of the two halves differ by at most one, so rank = height keeps the rank rules
+   **/
+   private IAVLNode buildRec(int[] keys, String[] infos, int lo, int hi) {
+	   int mid = (lo+hi)>>>1;
+	   IAVLNode node = new AVLNode(keys[mid], infos[mid]);
+	   if (lo<mid)
+		   node.setLeft(buildRec(keys, infos, lo, mid-1));
+	   if (mid<hi)
+		   node.setRight(buildRec(keys, infos, mid+1, hi));
+	   node.setHeight(Math.max(node.getLeft().getHeight(), node.getRight().getHeight())+1);
+	   node.setSize(hi-lo+1);
+	   return node;
+   }
+   
+   /**
+    * public static AVLTree fromSortedIterator(PrimitiveIterator.OfInt keys, Iterator<String> infos)
+    *
+    * builds a tree of the items (keys.next(), infos.next()) in O(n) time, reading both iterators once,
+    * without knowing n in advance.
+    * items are gathered into perfect subtrees, like the digits of a binary counter;
+    * when the keys end the remaining subtrees (O(log n) of them) are joined from the smallest up.
+    * precondition: keys are sorted in increasing order and infos has an item for every key
+    * (throws IllegalArgumentException if the keys are not sorted)
+    */
+   public static AVLTree fromSortedIterator(PrimitiveIterator.OfInt keys, Iterator<String> infos) {
+	   AVLTree tree = new AVLTree();
+	   //frames[j] waits for a right subtree as high as its left subtree, their heights decrease upwards
+	   IAVLNode[] frames = new IAVLNode[33];
+	   int top = 0;
+	   IAVLNode carry = null; //the last completed perfect subtree, if it has no parent yet
+	   int n = 0;
+	   int prev = 0;
+	   while (keys.hasNext()) {
+		   int k = keys.nextInt();
+		   if (n>0 && k<=prev)
+			   throw new IllegalArgumentException("keys are not sorted and distinct at index "+n);
+		   prev = k;
+		   n++;
+		   IAVLNode node = tree.new AVLNode(k, infos.next());
+		   if (carry!=null) { //node is the root above carry, waiting for its right subtree
+			   node.setLeft(carry);
+			   node.setHeight(carry.getHeight()+1);
+			   frames[top++] = node;
+			   carry = null;
+		   }
+		   else { //node is a leaf, it completes every frame waiting for a subtree of its height
+			   carry = node;
+			   while (top>0 && frames[top-1].getHeight()==carry.getHeight()+1) {
+				   IAVLNode frame = frames[--top];
+				   frame.setRight(carry);
+				   frame.setSize(frame.getLeft().getSize()+carry.getSize()+1);
+				   carry = frame;
+			   }
+		   }
+	   }
+	   //joining the remaining subtrees, each frame joins its left subtree with everything after it
+	   AVLTree right = new AVLTree();
+	   if (carry!=null) {
+		   right.root = carry;
+		   right.size = carry.getSize();
+	   }
+	   while (top>0) {
+		   IAVLNode frame = frames[--top];
+		   AVLTree left = new AVLTree();
+		   left.root = frame.getLeft();
+		   left.root.setParent(null);
+		   left.size = left.root.getSize();
+		   left.join(frame, right);
+		   right = left;
+	   }
+	   if (!right.empty())
+		   right.updateMinMax();
+	   return right;
+   }
+   
+   /**
+    * public static AVLTree fromUnsorted(int[] keys, String[] infos)
+    *
+    * sorts the items with a parallel sort and builds the tree with fromSorted, in O(n log n) time.
+    * precondition: the keys are distinct and infos.length == keys.length
+    * (throws IllegalArgumentException otherwise)
+    */
+   public static AVLTree fromUnsorted(int[] keys, String[] infos) {
+	   if (keys.length!=infos.length)
+		   throw new IllegalArgumentException("keys and infos have different lengths");
+	   long[] order = sortedOrder(keys);
+	   int[] sortedKeys = new int[keys.length];
+	   String[] sortedInfos = new String[keys.length];
+	   for (int j=0; j<order.length; j++) {
+		   sortedKeys[j] = (int)(order[j]>>32);
+		   sortedInfos[j] = infos[(int)order[j]];
+	   }
+	   return fromSorted(sortedKeys, sortedInfos); //fromSorted rejects duplicate keys
+   }
+   
+   /** private static long[] sortedOrder(int[] keys)
+    * returns the pairs (keys[j], j) sorted by key, then by index, with a parallel sort.
+    * each pair is packed in a long: the key in the high half, its index in the low half
+   **/
+   private static long[] sortedOrder(int[] keys) {
+	   long[] order = new long[keys.length];
+	   for (int j=0; j<keys.length; j++)
+		   order[j] = ((long)keys[j]<<32) | j;
+	   Arrays.parallelSort(order);
+	   return order;
+   }
+   
+   /**
+    * public int insertAll(int[] keys, String[] infos)
+    *
+    * inserts the items (keys[j], infos[j]) to the AVL tree, as if insert was called for each of them.
+    * the batch is sorted first and inserted from the smallest key, so consecutive inserts share most
+    * of their search route and find it in the cache.
+    * keys already in the tree (or repeated in the batch) are skipped, the first info given for a key is kept.
+    * returns the total number of rebalancing operations of the inserts.
+    * complexity: O(m log n) for a batch of m keys, every key is still inserted from the root.
+    * when the count isn't needed, union(fromSorted(...)) adds a sorted batch in O(m log(n/m + 1)).
+    * precondition: infos.length == keys.length (throws IllegalArgumentException otherwise)
+    */
+   public int insertAll(int[] keys, String[] infos) {
+	   if (keys.length!=infos.length)
+		   throw new IllegalArgumentException("keys and infos have different lengths");
+	   int count = 0;
+	   for (long item : sortedOrder(keys)) {
+		   int rebalance = insert((int)(item>>32), infos[(int)item]);
+		   if (rebalance>0) //-1 is a key that was already in the tree
+			   count += rebalance;
+	   }
+	   return count;
+   }
+   
+   /**
+    * public int deleteAll(int[] keys)
+    *
+    * deletes the items with the given keys from the tree, as if delete was called for each of them,
+    * in increasing key order like insertAll. keys not in the tree are skipped.
+    * returns the total number of rebalancing operations of the deletes.
+    * complexity: O(m log n) for a batch of m keys, every key is still deleted from the root.
+    * when the count isn't needed, difference(fromSorted(...)) deletes a sorted batch in O(m log(n/m + 1)).
+    */
+   public int deleteAll(int[] keys) {
+	   int[] sorted = keys.clone();
+	   Arrays.parallelSort(sorted);
+	   int count = 0;
+	   for (int k : sorted) {
+		   int rebalance = delete(k);
+		   if (rebalance>0) //-1 is a key that was not in the tree
+			   count += rebalance;
+	   }
+	   return count;
+   }
+   
+   /**
+    * public int union(AVLTree t)
+    *
+    * adds the items of t to the tree, keeping this tree's info for keys in both trees.
+    * the nodes of t are reused and t is left empty.
+    * runs on the common ForkJoinPool in O(m log(n/m + 1)) work and O(log^2 n) span,
+    * where m <= n are the sizes of the two trees. returns the new size of the tree.
+    */
+   public int union(AVLTree t) {
+	   return union(t, ForkJoinPool.commonPool());
+   }
+   
+   /**
+    * public int union(AVLTree t, ForkJoinPool pool)
+    *
+    * like union(t), running on the given pool
+    */
+   public int union(AVLTree t, ForkJoinPool pool) {
+	   return setOperation(t, pool, 'U');
+   }
+   
+   /**
+    * public int intersection(AVLTree t)
+    *
+    * keeps only the items of the tree whose keys are also in t, and leaves t empty.
+    * same work and span as union. returns the new size of the tree.
+    */
+   public int intersection(AVLTree t) {
+	   return intersection(t, ForkJoinPool.commonPool());
+   }
+   
+   /**
+    * public int intersection(AVLTree t, ForkJoinPool pool)
+    *
+    * like intersection(t), running on the given pool
+    */
+   public int intersection(AVLTree t, ForkJoinPool pool) {
+	   return setOperation(t, pool, 'I');
+   }
+   
+   /**
+    * public int difference(AVLTree t)
+    *
+    * deletes the items whose keys are in t from the tree, and leaves t empty.
+    * same work and span as union. returns the new size of the tree.
+    */
+   public int difference(AVLTree t) {
+	   return difference(t, ForkJoinPool.commonPool());
+   }
+   
+   /**
+    * public int difference(AVLTree t, ForkJoinPool pool)
+    *
+    * like difference(t), running on the given pool
+    */
+   public int difference(AVLTree t, ForkJoinPool pool) {
+	   return setOperation(t, pool, 'D');
+   }
+   
+   private int setOperation(AVLTree t, ForkJoinPool pool, char op) { //op is 'U', 'I' or 'D'
+	   if (t==this) { //the union or intersection of a tree with itself is the tree
+		   if (op=='D')
+			   setRoot(null);
+		   return size;
+	   }
+	   IAVLNode a = empty() ? virtualNode() : root;
+	   IAVLNode b = t.empty() ? virtualNode() : t.root;
+	   if (aggregate!=null && t.aggregate!=aggregate) //the nodes of t hold another aggregate, or none. O(m)
+		   recomputeAggregates(b);
+	   t.setRoot(null);
+	   IAVLNode result = pool.invoke(new SetOperationTask(a, b, op));
+	   setRoot(result.isRealNode() ? result : null);
+	   return size;
+   }
+   
+   private void setRoot(IAVLNode node) { //making node the root and updating size, min and max
+	   root = node;
+	   if (cache!=null) //the tree may have lost keys
+		   cache.clear();
+	   if (node==null) {
+		   size = 0;
+		   min = null;
+		   max = null;
+		   return;
+	   }
+	   node.setParent(null);
+	   size = node.getSize();
+	   updateMinMax();
+   }
+   
+   /**
+    * private class SetOperationTask
+    *
+    * one step of union/intersection/difference of the subtrees a and b: a is split by the key of b's root,
+    * the two halves are combined with b's subtrees in parallel, and the results are joined again.
+    * subtrees smaller than SEQUENTIAL_CUTOFF are combined on the current thread.
+    */
+   private class SetOperationTask extends RecursiveTask<IAVLNode> {
+	   private static final long serialVersionUID = 1L;
+	   private final IAVLNode a;
+	   private final IAVLNode b;
+	   private final char op;
+	   
+	   SetOperationTask(IAVLNode a, IAVLNode b, char op) {
+		   this.a = a;
+		   this.b = b;
+		   this.op = op;
+	   }
+	   
+	   protected IAVLNode compute() {
+		   return setOperation(a, b, op, true);
+	   }
+   }
+   
+   private static final int SEQUENTIAL_CUTOFF = 4096; //smaller subtrees aren't worth a task
+   
+   private IAVLNode setOperation(IAVLNode a, IAVLNode b, char op, boolean parallel) {
+	   if (!b.isRealNode()) //the intersection is empty, the union and difference are a
+		   return op=='I' ? b : a;
+	   if (!a.isRealNode()) //the union is b, the intersection and difference are empty
+		   return op=='U' ? b : a;
+	   IAVLNode bLeft = b.getLeft();
+	   IAVLNode bRight = b.getRight();
+	   int n = a.getSize()+b.getSize(); //before the split, which reuses a's nodes
+	   IAVLNode[] parts = new IAVLNode[2];
+	   IAVLNode found = splitNodes(a, b.getKey(), parts); //the node of a with b's key, or null
+	   IAVLNode left;
+	   IAVLNode right;
+	   if (parallel && n>=SEQUENTIAL_CUTOFF) {
+		   SetOperationTask leftTask = new SetOperationTask(parts[0], bLeft, op);
+		   leftTask.fork();
+		   right = setOperation(parts[1], bRight, op, true);
+		   left = leftTask.join();
+	   }
+	   else {
+		   left = setOperation(parts[0], bLeft, op, false);
+		   right = setOperation(parts[1], bRight, op, false);
+	   }
+	   if (op=='U')
+		   return joinNodes(left, found!=null ? found : b, right); //this tree's info wins
+	   if (op=='I' && found!=null)
+		   return joinNodes(left, found, right);
+	   return joinNodes(left, right);
+   }
+   
+   /** private IAVLNode splitNodes(IAVLNode node, int x, IAVLNode[] parts)
+    *
+    * splits node's subtree into parts[0] with keys < x and parts[1] with keys > x, reusing its nodes.
+    * returns the node with key x, detached, or null if x is not in the subtree.
+    * complexity: O(log n), the joins on the way up telescope
+    */
+   private IAVLNode splitNodes(IAVLNode node, int x, IAVLNode[] parts) {
+	   if (!node.isRealNode()) {
+		   parts[0] = node;
+		   parts[1] = virtualNode(); //keeping a virtual node of the original layout under one parent
+		   return null;
+	   }
+	   IAVLNode left = node.getLeft();
+	   IAVLNode right = node.getRight();
+	   if (x==node.getKey()) {
+		   parts[0] = left;
+		   parts[1] = right;
+		   return node;
+	   }
+	   IAVLNode found;
+	   if (x<node.getKey()) {
+		   found = splitNodes(left, x, parts);
+		   parts[1] = joinNodes(parts[1], node, right);
+	   }
+	   else {
+		   found = splitNodes(right, x, parts);
+		   parts[0] = joinNodes(left, node, parts[0]);
+	   }
+	   return found;
+   }
+   
+   /** private IAVLNode joinNodes(IAVLNode left, IAVLNode x, IAVLNode right)
+    *
+    * returns the root of a subtree of left, x and right, where keys(left) < x < keys(right).
+    * descends the higher subtree along its side facing the lower one until the ranks are close,
+    * links x there and rebalances the route back up.
+    * complexity: O(|rank difference| + 1)
+    */
+   private IAVLNode joinNodes(IAVLNode left, IAVLNode x, IAVLNode right) {
+	   int dif = left.getHeight()-right.getHeight();
+	   if (dif>1) {
+		   left.setRight(joinNodes(left.getRight(), x, right));
+		   return rebalanceNode(left);
+	   }
+	   if (dif<-1) {
+		   right.setLeft(joinNodes(left, x, right.getLeft()));
+		   return rebalanceNode(right);
+	   }
+	   x.setLeft(left);
+	   x.setRight(right);
+	   updateNode(x);
+	   return x;
+   }
+   
+   private IAVLNode joinNodes(IAVLNode left, IAVLNode right) { //joining without a middle key, keys(left) < keys(right)
+	   if (!left.isRealNode())
+		   return right;
+	   if (!right.isRealNode())
+		   return left;
+	   IAVLNode[] rest = new IAVLNode[1];
+	   IAVLNode last = removeMax(left, rest); //the max of left becomes the middle key
+	   return joinNodes(rest[0], last, right);
+   }
+   
+   private IAVLNode removeMax(IAVLNode node, IAVLNode[] rest) { //puts node's subtree without its max in rest[0], returns the max
+	   if (!node.getRight().isRealNode()) {
+		   rest[0] = node.getLeft();
+		   return node;
+	   }
+	   IAVLNode last = removeMax(node.getRight(), rest);
+	   node.setRight(rest[0]);
+	   rest[0] = rebalanceNode(node);
+	   return last;
+   }
+   
+   private void updateNode(IAVLNode node) { //recomputing rank, size and aggregate from the children
+	   node.setHeight(Math.max(node.getLeft().getHeight(), node.getRight().getHeight())+1);
+	   node.setSize(node.getLeft().getSize()+node.getRight().getSize()+1);
+	   if (aggregate!=null)
+		   updateAggregate(node);
+   }
+   
+   /*
+    * node's children are AVL subtrees whose ranks differ by at most 2.
+    * rotates node's subtree if they differ by 2 and returns its new root, with ranks and sizes updated.
+    * the returned root's parent is set by the caller
+    */
+   private IAVLNode rebalanceNode(IAVLNode node) {
+	   int dif = node.getLeft().getHeight()-node.getRight().getHeight();
+	   if (dif>1) {
+		   IAVLNode child = node.getLeft();
+		   if (child.getLeft().getHeight()<child.getRight().getHeight()) //double rotation
+			   node.setLeft(rotateNodeLeft(child));
+		   return rotateNodeRight(node);
+	   }
+	   if (dif<-1) {
+		   IAVLNode child = node.getRight();
+		   if (child.getRight().getHeight()<child.getLeft().getHeight())
+			   node.setRight(rotateNodeRight(child));
+		   return rotateNodeLeft(node);
+	   }
+	   updateNode(node);
+	   return node;
+   }
+   
+   private IAVLNode rotateNodeRight(IAVLNode node) { //the left child of node becomes the root of its subtree
+	   IAVLNode y = node.getLeft();
+	   node.setLeft(y.getRight());
+	   updateNode(node);
+	   y.setRight(node);
+	   updateNode(y);
+	   return y;
+   }
+   
+   private IAVLNode rotateNodeLeft(IAVLNode node) {
+	   IAVLNode y = node.getRight();
+	   node.setRight(y.getLeft());
+	   updateNode(node);
+	   y.setLeft(node);
+	   updateNode(y);
+	   return y;
+   }
+   
    private void updateMinMax() { //updating the new min and max in O(logn) time (the height of AVLTree) 
 	   IAVLNode minNode = root;
-	   while (minNode.isRealNode()) 
+	   while (minNode.getLeft().isRealNode()) 
 		   minNode = minNode.getLeft();
-	   min = minNode.getParent();//when the while loop ends minNode is a virtual node
+	   min = minNode;//when the while loop ends minNode has a virtual left child
 	   IAVLNode maxNode = root;
-	   while (maxNode.isRealNode())
+	   while (maxNode.getRight().isRealNode())
 		   maxNode = maxNode.getRight();
-	   max = maxNode.getParent(); //when the while loop ends maxNode is a virtual node
+	   max = maxNode; //when the while loop ends maxNode has a virtual right child
    }
    
    
@@ -787,7 +1988,7 @@ public class AVLTree {
 	   IAVLNode y = x.getLeft();
 	   IAVLNode tmpParentX= x.getParent(); 
 	   if (tmpParentX!=null) { //x could be the root
-		   if (tmpParentX.getLeft().getKey()==x.getKey()) //check if X is a left child or a right child
+		   if (tmpParentX.getLeft()==x) //check if X is a left child or a right child
 			   tmpParentX.setLeft(y);
 		   else tmpParentX.setRight(y);
 	   }
@@ -801,13 +2002,17 @@ public class AVLTree {
 	  //updating x and y new sizes
 	  x.setSize(x.getLeft().getSize()+x.getRight().getSize()+1);
 	  y.setSize(y.getLeft().getSize()+y.getRight().getSize()+1);
+	  if (aggregate!=null) {
+		  updateAggregate(x);
+		  updateAggregate(y);
+	  }
    }
    
    private void leftRotation(IAVLNode x) { //doing a rotation between x and right child (y)
 	   IAVLNode y= x.getRight();
 	   IAVLNode tmpParentX= x.getParent();
 	   if (tmpParentX!=null) { //x could be the root
-		   if (tmpParentX.getLeft().getKey()==x.getKey()) //check if X is a left child or a right child
+		   if (tmpParentX.getLeft()==x) //check if X is a left child or a right child
 			   tmpParentX.setLeft(y);
 		   else tmpParentX.setRight(y);
 	   }
@@ -821,10 +2026,279 @@ public class AVLTree {
 	 //updating x and y new sizes
 	   x.setSize(x.getLeft().getSize()+x.getRight().getSize()+1);
 	   y.setSize(y.getLeft().getSize()+y.getRight().getSize()+1);
+	   if (aggregate!=null) {
+		   updateAggregate(x);
+		   updateAggregate(y);
+	   }
    }
    
 
    
+	/**
+	 * public interface Aggregate<A>
+	 * a monoid over the items of the tree: of gives the value of one item, combine must be associative
+	 * with identity as its neutral element. it doesn't have to be commutative, values are combined in key order.
+	 * for example the sum of a number in the info, the max end of intervals keyed by their start, or a count
+	 */
+	public interface Aggregate<A> {
+		A identity();
+		A of(int key, String info);
+		A combine(A left, A right);
+	}
+	
+	/**
+	 * public interface IntObjConsumer
+	 * receives an item (key and info) of the tree, without boxing the key
+	 */
+	public interface IntObjConsumer {
+		public void accept(int key, String info);
+	}
+	
+	/**
+	 * public class EntryIterator
+	 *
+	 * An iterator over the keys in increasing order that also gives the info of the current key.
+	 * O(1) amortized per key, keeping the O(log n) ancestors still to be visited in an InOrderStack
+	 */
+	public class EntryIterator implements PrimitiveIterator.OfInt {
+		private final InOrderStack walk = new InOrderStack(0);
+		private IAVLNode next = walk.next(); //the node nextInt returns, null after the max key
+		private IAVLNode last; //the node nextInt returned last
+		
+		private EntryIterator() {
+		}
+		
+		public boolean hasNext() {
+			return next!=null;
+		}
+		
+		public int nextInt() {
+			if (next==null)
+				throw new NoSuchElementException();
+			last = next;
+			next = walk.next();
+			return last.getKey();
+		}
+		
+		/**
+		 * public String info()
+		 *
+		 * returns the info of the key nextInt returned last (throws IllegalStateException before the first nextInt)
+		 */
+		public String info() {
+			if (last==null)
+				throw new IllegalStateException("nextInt was not called yet");
+			return last.getValue();
+		}
+	}
+	
+	/**
+	 * private class EntrySpliterator
+	 *
+	 * the nodes with ranks from..to-1. the walk to the first node is set up by rank only when
+	 * it is read, so splitting costs nothing more than the halving
+	 */
+	private class EntrySpliterator implements Spliterator<IAVLNode> {
+		private int from; //the rank of the next node
+		private final int to;
+		private InOrderStack walk; //positioned at rank from, null until it is needed
+		
+		private EntrySpliterator(int from, int to, InOrderStack walk) {
+			this.from = from;
+			this.to = to;
+			this.walk = walk;
+		}
+		
+		public boolean tryAdvance(Consumer<? super IAVLNode> action) {
+			if (from>=to)
+				return false;
+			if (walk==null)
+				walk = new InOrderStack(from);
+			from++;
+			action.accept(walk.next());
+			return true;
+		}
+		
+		public void forEachRemaining(Consumer<? super IAVLNode> action) {
+			if (from>=to)
+				return;
+			InOrderStack remaining = walk!=null ? walk : new InOrderStack(from);
+			int count = to-from;
+			from = to;
+			walk = null;
+			for (; count>0; count--)
+				action.accept(remaining.next());
+		}
+		
+		public Spliterator<IAVLNode> trySplit() {
+			int mid = (from+to)>>>1;
+			if (mid<=from)
+				return null;
+			EntrySpliterator prefix = new EntrySpliterator(from, mid, walk);
+			from = mid;
+			walk = null;
+			return prefix;
+		}
+		
+		public long estimateSize() {
+			return to-from;
+		}
+		
+		public int characteristics() {
+			return ORDERED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+		}
+	}
+	
+	/**
+	 * private class InOrderStack
+	 *
+	 * an in-order walk without recursion. the stack holds the nodes whose left subtree is being
+	 * walked, so each node is pushed and popped once and never reached again through its parent.
+	 * the stack is as deep as the tree, which is at most 1.44 log n
+	 */
+	private class InOrderStack {
+		private final IAVLNode[] stack;
+		private int depth; //the number of nodes in stack
+		
+		/**
+		 * starts the walk over the tree at the node with the given rank (or at the end if rank >= size)
+		 */
+		private InOrderStack(int rank) {
+			this(empty() ? VIRTUAL_NODE : root, rank);
+		}
+		
+		/**
+		 * starts the walk over top's subtree at the node with the given rank in it
+		 */
+		private InOrderStack(IAVLNode top, int rank) {
+			stack = new IAVLNode[top.getHeight()+1];
+			IAVLNode node = top;
+			while (node.isRealNode()) {
+				int leftSize = node.getLeft().getSize();
+				if (rank<=leftSize) { //the node with this rank is node or in its left subtree
+					stack[depth++] = node;
+					if (rank==leftSize)
+						return;
+					node = node.getLeft();
+				}
+				else {
+					rank -= leftSize+1;
+					node = node.getRight();
+				}
+			}
+		}
+		
+		/**
+		 * returns the next node in order, or null after the last one
+		 */
+		private IAVLNode next() {
+			if (depth==0)
+				return null;
+			IAVLNode node = stack[--depth];
+			for (IAVLNode child = node.getRight(); child.isRealNode(); child = child.getLeft())
+				stack[depth++] = child;
+			return node;
+		}
+	}
+	
+	/**
+	 * public class Cursor
+	 *
+	 * A position in the tree that moves in both directions over the keys in order.
+	 * next and prev follow successor and predecessor, so a walk over k keys costs O(log n + k)
+	 * and allocates nothing. A cursor is either on a node (valid) or off the ends of the tree.
+	 * the tree must not be modified while a cursor is used, except by seeking it again
+	 */
+	public class Cursor {
+		private IAVLNode node; //the current node, null if the cursor is not valid
+		
+		private Cursor() {
+		}
+		
+		/**
+		 * public boolean seek(int k)
+		 *
+		 * moves to the smallest key >= k. returns true if there is one
+		 */
+		public boolean seek(int k) {
+			node = ceiling(k);
+			return node!=null;
+		}
+		
+		/**
+		 * public boolean seekFirst()
+		 *
+		 * moves to the min key. returns false if the tree is empty
+		 */
+		public boolean seekFirst() {
+			node = empty() ? null : min;
+			return node!=null;
+		}
+		
+		/**
+		 * public boolean seekLast()
+		 *
+		 * moves to the max key. returns false if the tree is empty
+		 */
+		public boolean seekLast() {
+			node = empty() ? null : max;
+			return node!=null;
+		}
+		
+		/**
+		 * public boolean valid()
+		 *
+		 * returns true if the cursor is on a key
+		 */
+		public boolean valid() {
+			return node!=null;
+		}
+		
+		/**
+		 * public boolean next()
+		 *
+		 * moves to the next key. returns false (and the cursor becomes not valid) after the max key
+		 */
+		public boolean next() {
+			if (node!=null)
+				node = successor(node);
+			return node!=null;
+		}
+		
+		/**
+		 * public boolean prev()
+		 *
+		 * moves to the previous key. returns false (and the cursor becomes not valid) before the min key
+		 */
+		public boolean prev() {
+			if (node!=null)
+				node = predecessor(node);
+			return node!=null;
+		}
+		
+		/**
+		 * public int key()
+		 *
+		 * returns the current key (throws NoSuchElementException if the cursor is not valid)
+		 */
+		public int key() {
+			if (node==null)
+				throw new NoSuchElementException("the cursor is not on a key");
+			return node.getKey();
+		}
+		
+		/**
+		 * public String info()
+		 *
+		 * returns the info of the current key (throws NoSuchElementException if the cursor is not valid)
+		 */
+		public String info() {
+			if (node==null)
+				throw new NoSuchElementException("the cursor is not on a key");
+			return node.getValue();
+		}
+	}
+	
 	/**
 	   * public interface IAVLNode
 	   * ! Do not delete or modify this - otherwise all tests will fail !
@@ -864,6 +2338,7 @@ public class AVLTree {
 	  private IAVLNode right;
 	  private IAVLNode parent;
 	  private int size = 1;
+	  private Object aggregate; //the aggregate of the subtree, if the tree keeps one
 	    
 	    public AVLNode() {//virtual node
 	    	this.key=-1;
@@ -871,11 +2346,13 @@ public class AVLTree {
 	    	this.size = 0; //size of a virtual node is zero, because it's not a node in the tree
 	    }
 	    public AVLNode (int key, String info) {
+	  		if (metrics!=null)
+	  			metrics.nodeAllocated();
 	  		this.key = key;
 	  		this.info = info;
 	  		this.rank =0;
-	  		this.setLeft(new AVLNode());
-	  		this.setRight(new AVLNode());
+	  		this.setLeft(virtualNode()); //shared virtual node, or new ones in the original layout
+	  		this.setRight(virtualNode());
 	  		this.size=1;	
 	  	}
 	  	
@@ -915,9 +2392,10 @@ public class AVLTree {
 			return parent; //could be null
 		}
 		// Returns True if this is a non-virtual AVL node
+		// virtual nodes are the only nodes with rank -1, so every int (including -1) can be a key
 		public boolean isRealNode()
 		{
-			return key!=-1; 
+			return rank!=-1; 
 		}
 	    public void setHeight(int height)
 	    {
@@ -936,6 +2414,29 @@ public class AVLTree {
 	    	this.size=size;
 	    }
   }
+  
+  /**
+   * private static class VirtualNode
+   *
+   * the virtual leaf shared by all trees in the shared layout.
+   * it is immutable: it has no parent and no children, and all setters are ignored,
+   * so the tree code never relies on the parent of a virtual node.
+   */
+  private static class VirtualNode implements IAVLNode{
+	  public int getKey() { return -1; }
+	  public String getValue() { return null; }
+	  public void setLeft(IAVLNode node) { }
+	  public IAVLNode getLeft() { return null; }
+	  public void setRight(IAVLNode node) { }
+	  public IAVLNode getRight() { return null; }
+	  public void setParent(IAVLNode node) { } //linking the virtual node under a real node doesn't change it
+	  public IAVLNode getParent() { return null; }
+	  public boolean isRealNode() { return false; }
+	  public void setHeight(int height) { }
+	  public int getHeight() { return -1; }
+	  public int getSize() { return 0; }
+	  public void setSize(int size) { }
+  }
 
 }
   
@@ -0,0 +1,234 @@
+import java.util.Arrays;
+
+/**
+ *
+ * AVLTreeCache
+ *
+ * A bounded cache of items (key, info) in front of AVLTree.search, for lookups where a small set of
+ * hot keys is searched again and again: a hit is one hash probe instead of a walk of O(log n) nodes.
+ *
+ * The table is open addressing with linear probing over int keys, at most half full, so there is
+ * no boxing and no entry objects. A slot is one long holding the key and its state bits, so a probe
+ * reads a single array and the info array is read only on a hit. When it holds capacity items,
+ * CLOCK picks the item to evict:
+ * every hit sets the reference bit of its slot, the hand sweeps the slots clearing bits and evicts
+ * the first item whose bit is already clear. Removing an item shifts the rest of its probe run back,
+ * so the table needs no tombstones.
+ *
+ * A key is cached on its second miss, not its first: a miss only records the key in one of its two
+ * slots of a doorkeeper int array, and the item is put if the key is still there at its next miss.
+ * Two slots per key, written alternately, keep two hot keys that share a slot from keeping each
+ * other out forever. Both slots are in the same 64 byte line, so a miss reads one more line.
+ * Keys searched once (a scan, a uniform workload) then cost one store instead of a put and an
+ * eviction, and they don't push hot items out.
+ *
+ * A tree has no cache until enableCache() is called. Only items found in the tree are cached, and
+ * the tree removes an item from its cache when it deletes the key. insert never changes the info
+ * of a key that is already in the tree, so inserts need no invalidation. Methods that move nodes
+ * between trees (split, extractRange, join, the set operations) clear the caches of the trees
+ * they change, and the trees split and extractRange return get empty caches of the same capacity.
+ * The table is allocated at the first item, so such a tree costs nothing until it is searched.
+ *
+ * Like the tree, the cache is not thread-safe.
+ *
+ */
+
+public class AVLTreeCache {
+
+	public static final int MAX_CAPACITY = 1 << 29;
+
+	//a slot is the key in the low 32 bits and these bits above it, 0 for an empty slot
+	private static final long USED = 1L << 32;
+	private static final long REFERENCED = 1L << 33; //with USED, the item was hit since the hand passed it
+	private static final long KEY = 0xffffffffL;
+
+	private final int capacity;
+	private final int mask; //the table length - 1, a power of two >= 2 * capacity
+	private long[] slots; //null until the first item
+	private String[] infos;
+	private int[] doorkeeper; //the last key that missed in each doorkeeper slot, as long as the table and >= 16
+	private int count;
+	private int hand; //the next slot CLOCK looks at
+	private long hits;
+	private long misses;
+
+	AVLTreeCache(int capacity) {
+		if (capacity < 1 || capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("capacity " + capacity + " out of range 1.." + MAX_CAPACITY);
+		this.capacity = capacity;
+		this.mask = Integer.highestOneBit(2 * capacity - 1) * 2 - 1;
+	}
+
+	/**
+	 * public int capacity()
+	 *
+	 * returns the maximal number of items in the cache
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * returns the number of items in the cache
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * public long hits()
+	 *
+	 * returns the number of searches the cache answered since it was created or resetStats was called
+	 */
+	public long hits() {
+		return hits;
+	}
+
+	/**
+	 * public long misses()
+	 *
+	 * returns the number of searches that went to the tree
+	 */
+	public long misses() {
+		return misses;
+	}
+
+	/**
+	 * public double hitRate()
+	 *
+	 * returns hits / (hits + misses), or 0 if there was no search
+	 */
+	public double hitRate() {
+		long searches = hits + misses;
+		return searches == 0 ? 0 : (double) hits / searches;
+	}
+
+	/**
+	 * public void resetStats()
+	 *
+	 * sets hits and misses to 0, the items stay
+	 */
+	public void resetStats() {
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * public void clear()
+	 *
+	 * removes every item
+	 */
+	public void clear() {
+		if (count == 0)
+			return;
+		Arrays.fill(slots, 0);
+		Arrays.fill(infos, null);
+		Arrays.fill(doorkeeper, 0);
+		count = 0;
+		hand = 0;
+	}
+
+	//what AVLTree calls
+
+	/*
+	 * returns the slot of k and marks it referenced, or -1 if k is not cached. counts a hit or a miss
+	 */
+	int find(int k) {
+		if (slots != null) {
+			long item = USED | k & KEY;
+			for (int i = slot(k); slots[i] != 0; i = (i + 1) & mask) {
+				if ((slots[i] & ~REFERENCED) == item) {
+					slots[i] |= REFERENCED;
+					hits++;
+					return i;
+				}
+			}
+		}
+		misses++;
+		return -1;
+	}
+
+	String info(int slot) {
+		return infos[slot];
+	}
+
+	/*
+	 * caches (k, info) if k missed before, evicting an item if the cache is full. precondition: k is not cached
+	 */
+	void put(int k, String info) {
+		if (slots == null) {
+			slots = new long[mask + 1];
+			infos = new String[mask + 1];
+			doorkeeper = new int[Math.max(mask + 1, 16)];
+		}
+		int door1 = slot(k) & (doorkeeper.length - 1);
+		int door2 = door1 ^ (k * 0x85ebca6b >>> 28 | 1); //another slot of the 16 ints in door1's line
+		if (doorkeeper[door1] != k && doorkeeper[door2] != k) { //the first miss of k (key 0 may be put at once, that is harmless)
+			doorkeeper[(misses & 1) == 0 ? door1 : door2] = k;
+			return;
+		}
+		if (count == capacity)
+			evict();
+		int i = slot(k);
+		while (slots[i] != 0)
+			i = (i + 1) & mask;
+		slots[i] = USED | k & KEY; //a new item gets no reference bit, it is evicted on the next sweep unless it is hit
+		infos[i] = info;
+		count++;
+	}
+
+	/*
+	 * removes k if it is cached
+	 */
+	void invalidate(int k) {
+		if (count == 0)
+			return;
+		for (int i = slot(k); slots[i] != 0; i = (i + 1) & mask) {
+			if ((int) slots[i] == k) {
+				remove(i);
+				return;
+			}
+		}
+	}
+
+	private int slot(int k) {
+		int h = k * 0x9e3779b9; //Fibonacci hashing, the high bits are mixed down
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private void evict() {
+		while (true) {
+			long item = slots[hand];
+			if ((item & REFERENCED) != 0)
+				slots[hand] = item & ~REFERENCED; //a second chance
+			else if (item != 0) {
+				remove(hand);
+				hand = (hand + 1) & mask;
+				return;
+			}
+			hand = (hand + 1) & mask;
+		}
+	}
+
+	/*
+	 * empties slot i and moves back every later item of the probe run that can't be found
+	 * from its home slot across the new hole (backward shift deletion)
+	 */
+	private void remove(int i) {
+		count--;
+		int hole = i;
+		for (int j = (hole + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+			int home = slot((int) slots[j]);
+			boolean reachable = hole <= j ? hole < home && home <= j : hole < home || home <= j;
+			if (reachable) //the item's home is after the hole, it stays
+				continue;
+			slots[hole] = slots[j];
+			infos[hole] = infos[j];
+			hole = j;
+		}
+		slots[hole] = 0;
+		infos[hole] = null;
+	}
+}
@@ -0,0 +1,265 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ *
+ * AVLTreeMetrics
+ *
+ * Counters of the work an AVLTree does: rotations and rank changes of insert/delete rebalancing,
+ * the number of nodes each search route visits, join rank differences, the joins split does
+ * and the nodes the tree allocates.
+ *
+ * A tree has no metrics until enableMetrics() is called. Until then every hook in the tree is a single
+ * null check. The counters are LongAdders, so union/intersection/difference can update them from
+ * several threads, and they can be read while the tree changes, through snapshot() or JMX.
+ *
+ */
+
+public class AVLTreeMetrics implements AVLTreeMetricsMBean {
+
+	public static final int MAX_DEPTH = 64; //deeper routes go to the last bucket, an AVL tree of 2^31 keys is at most 45 deep
+
+	private final LongAdder singleRotations = new LongAdder();
+	private final LongAdder doubleRotations = new LongAdder();
+	private final LongAdder promotions = new LongAdder();
+	private final LongAdder demotions = new LongAdder();
+	private final LongAdder[] searchDepths = new LongAdder[MAX_DEPTH + 1];
+	private final LongAdder joins = new LongAdder();
+	private final LongAdder joinRankDifferences = new LongAdder();
+	private final LongAccumulator joinRankDifferenceMax = new LongAccumulator(Math::max, 0);
+	private final LongAdder splits = new LongAdder();
+	private final LongAdder splitJoins = new LongAdder();
+	private final LongAdder nodeAllocations = new LongAdder();
+	private ObjectName registeredName; //null if not registered
+
+	AVLTreeMetrics() {
+		for (int d = 0; d <= MAX_DEPTH; d++)
+			searchDepths[d] = new LongAdder();
+	}
+
+	//the hooks AVLTree calls
+
+	void rotations(int single, int dbl) {
+		if (single > 0)
+			singleRotations.add(single);
+		if (dbl > 0)
+			doubleRotations.add(dbl);
+	}
+
+	void rankChanges(int promoted, int demoted) {
+		if (promoted > 0)
+			promotions.add(promoted);
+		if (demoted > 0)
+			demotions.add(demoted);
+	}
+
+	void search(int depth) {
+		searchDepths[Math.min(depth, MAX_DEPTH)].increment();
+	}
+
+	void join(int rankDifference) {
+		joins.increment();
+		joinRankDifferences.add(rankDifference);
+		joinRankDifferenceMax.accumulate(rankDifference);
+	}
+
+	void split(int joinCount) {
+		splits.increment();
+		splitJoins.add(joinCount);
+	}
+
+	void nodeAllocated() {
+		nodeAllocations.increment();
+	}
+
+	/**
+	 * public Snapshot snapshot()
+	 *
+	 * returns the current values of all counters. each counter is read once, so counters
+	 * that change while the snapshot is taken may be off from each other by the last few operations
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	public long getSingleRotations() {
+		return singleRotations.sum();
+	}
+
+	public long getDoubleRotations() {
+		return doubleRotations.sum();
+	}
+
+	public long getPromotions() {
+		return promotions.sum();
+	}
+
+	public long getDemotions() {
+		return demotions.sum();
+	}
+
+	public long getSearches() {
+		long total = 0;
+		for (LongAdder bucket : searchDepths)
+			total += bucket.sum();
+		return total;
+	}
+
+	public double getMeanSearchDepth() {
+		return mean(getSearchDepthHistogram());
+	}
+
+	public long[] getSearchDepthHistogram() {
+		long[] histogram = new long[MAX_DEPTH + 1];
+		for (int d = 0; d <= MAX_DEPTH; d++)
+			histogram[d] = searchDepths[d].sum();
+		return histogram;
+	}
+
+	public long getJoins() {
+		return joins.sum();
+	}
+
+	public long getJoinRankDifferenceTotal() {
+		return joinRankDifferences.sum();
+	}
+
+	public long getJoinRankDifferenceMax() {
+		return joinRankDifferenceMax.get();
+	}
+
+	public long getSplits() {
+		return splits.sum();
+	}
+
+	public long getSplitJoins() {
+		return splitJoins.sum();
+	}
+
+	public long getNodeAllocations() {
+		return nodeAllocations.sum();
+	}
+
+	/**
+	 * public void reset()
+	 *
+	 * sets all counters to zero
+	 */
+	public void reset() {
+		singleRotations.reset();
+		doubleRotations.reset();
+		promotions.reset();
+		demotions.reset();
+		for (LongAdder bucket : searchDepths)
+			bucket.reset();
+		joins.reset();
+		joinRankDifferences.reset();
+		joinRankDifferenceMax.reset();
+		splits.reset();
+		splitJoins.reset();
+		nodeAllocations.reset();
+	}
+
+	/**
+	 * public synchronized void registerMBean(String name)
+	 *
+	 * registers the counters with the platform MBean server as avltree:type=AVLTreeMetrics,name=name
+	 * (replacing a registration of this object under another name).
+	 * throws IllegalArgumentException if the name is taken or not a valid ObjectName value
+	 */
+	public synchronized void registerMBean(String name) {
+		unregisterMBean();
+		try {
+			ObjectName objectName = ObjectName.getInstance("avltree:type=AVLTreeMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			registeredName = objectName;
+		} catch (JMException e) {
+			throw new IllegalArgumentException("can't register metrics as " + name, e);
+		}
+	}
+
+	/**
+	 * public synchronized void unregisterMBean()
+	 *
+	 * removes the registration made by registerMBean, if there is one
+	 */
+	public synchronized void unregisterMBean() {
+		if (registeredName == null)
+			return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(registeredName))
+				server.unregisterMBean(registeredName);
+		} catch (JMException e) {
+			//it was unregistered by someone else meanwhile
+		}
+		registeredName = null;
+	}
+
+	private static double mean(long[] histogram) {
+		long count = 0;
+		long total = 0;
+		for (int d = 0; d < histogram.length; d++) {
+			count += histogram[d];
+			total += d * histogram[d];
+		}
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * public static class Snapshot
+	 *
+	 * the counters at one point in time
+	 */
+	public static class Snapshot {
+		public final long singleRotations;
+		public final long doubleRotations;
+		public final long promotions;
+		public final long demotions;
+		public final long[] searchDepthHistogram;
+		public final long joins;
+		public final long joinRankDifferenceTotal;
+		public final long joinRankDifferenceMax;
+		public final long splits;
+		public final long splitJoins;
+		public final long nodeAllocations;
+
+		private Snapshot(AVLTreeMetrics m) {
+			singleRotations = m.getSingleRotations();
+			doubleRotations = m.getDoubleRotations();
+			promotions = m.getPromotions();
+			demotions = m.getDemotions();
+			searchDepthHistogram = m.getSearchDepthHistogram();
+			joins = m.getJoins();
+			joinRankDifferenceTotal = m.getJoinRankDifferenceTotal();
+			joinRankDifferenceMax = m.getJoinRankDifferenceMax();
+			splits = m.getSplits();
+			splitJoins = m.getSplitJoins();
+			nodeAllocations = m.getNodeAllocations();
+		}
+
+		public long searches() {
+			long total = 0;
+			for (long count : searchDepthHistogram)
+				total += count;
+			return total;
+		}
+
+		public double meanSearchDepth() {
+			return mean(searchDepthHistogram);
+		}
+
+		public String toString() {
+			return "rotations " + singleRotations + " single, " + doubleRotations + " double; promotions " + promotions
+					+ ", demotions " + demotions + "; searches " + searches() + ", mean depth "
+					+ String.format("%.2f", meanSearchDepth()) + "; joins " + joins + ", rank difference total "
+					+ joinRankDifferenceTotal + ", max " + joinRankDifferenceMax + "; splits " + splits + " with "
+					+ splitJoins + " joins; nodes allocated " + nodeAllocations;
+		}
+	}
+}
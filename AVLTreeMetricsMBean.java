@@ -0,0 +1,38 @@
+/**
+ *
+ * AVLTreeMetricsMBean
+ *
+ * The JMX view of AVLTreeMetrics (see AVLTreeMetrics.registerMBean).
+ *
+ */
+
+public interface AVLTreeMetricsMBean {
+
+	long getSingleRotations();
+
+	long getDoubleRotations();
+
+	long getPromotions();
+
+	long getDemotions();
+
+	long getSearches();
+
+	double getMeanSearchDepth();
+
+	long[] getSearchDepthHistogram(); //entry d counts the searches that visited d nodes
+
+	long getJoins();
+
+	long getJoinRankDifferenceTotal();
+
+	long getJoinRankDifferenceMax();
+
+	long getSplits();
+
+	long getSplitJoins();
+
+	long getNodeAllocations();
+
+	void reset();
+}
@@ -0,0 +1,382 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ *
+ * AVLTreeSnapshot
+ *
+ * Writes an AVLTree to a binary file and reads it back.
+ *
+ * file: a 32 byte header, the key block, then the value block.
+ * header: magic, version, flags (1 = both blocks are deflate compressed), item count,
+ *         the byte length of the key block and of the value block.
+ * key block: the sorted keys as varints, the first key zigzag encoded, every other key
+ *            as the gap to the previous one minus 1 (dense keys take one byte each).
+ * value block: for every key in the same order, the UTF-8 length of its info + 1 as a varint
+ *              (0 for a null info), then the UTF-8 bytes.
+ *
+ * write walks the tree lazily twice, once per block, so a tree of any size is written with
+ * O(log n) memory. read opens one channel per block and builds the tree with
+ * AVLTree.fromSortedIterator while reading both blocks sequentially, in O(n) time with no
+ * rebalancing and no arrays of the items.
+ *
+ */
+
+public class AVLTreeSnapshot {
+
+	private static final int MAGIC = 0x41564c53; //"AVLS"
+	private static final int VERSION = 1;
+	private static final int HEADER = 32;
+	private static final int COMPRESSED = 1;
+	private static final int BUFFER = 1 << 16;
+
+	//header fields
+	private static final int H_MAGIC = 0;
+	private static final int H_VERSION = 4;
+	private static final int H_FLAGS = 8;
+	private static final int H_COUNT = 12;
+	private static final int H_KEYS_LENGTH = 16;
+	private static final int H_VALUES_LENGTH = 24;
+
+	private AVLTreeSnapshot() {
+	}
+
+	/**
+	 * public static long write(AVLTree tree, Path path) throws IOException
+	 *
+	 * writes tree to path uncompressed, replacing the file. returns the file size
+	 */
+	public static long write(AVLTree tree, Path path) throws IOException {
+		return write(tree, path, false);
+	}
+
+	/**
+	 * public static long write(AVLTree tree, Path path, boolean compress) throws IOException
+	 *
+	 * writes tree to path, replacing the file, with both blocks deflate compressed if compress,
+	 * and forces it to disk. returns the file size. the tree must not be modified while it is written
+	 */
+	public static long write(AVLTree tree, Path path, boolean compress) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.position(HEADER);
+			int count = 0;
+			try (OutputStream keys = block(channel, compress)) {
+				long prev = 0;
+				for (PrimitiveIterator.OfInt it = tree.iterator(); it.hasNext();) {
+					int k = it.nextInt();
+					writeVarLong(keys, count == 0 ? ((k << 1) ^ (k >> 31)) & 0xffffffffL : k - prev - 1);
+					prev = k;
+					count++;
+				}
+			}
+			long keysLength = channel.position() - HEADER;
+			try (OutputStream values = block(channel, compress)) {
+				for (AVLTree.EntryIterator it = tree.iterator(); it.hasNext();) {
+					it.nextInt();
+					String info = it.info();
+					if (info == null) {
+						values.write(0);
+						continue;
+					}
+					byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+					writeVarLong(values, bytes.length + 1L);
+					values.write(bytes);
+				}
+			}
+			long valuesLength = channel.position() - HEADER - keysLength;
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(H_MAGIC, MAGIC);
+			header.putInt(H_VERSION, VERSION);
+			header.putInt(H_FLAGS, compress ? COMPRESSED : 0);
+			header.putInt(H_COUNT, count);
+			header.putLong(H_KEYS_LENGTH, keysLength);
+			header.putLong(H_VALUES_LENGTH, valuesLength);
+			while (header.hasRemaining())
+				channel.write(header, header.position());
+			channel.force(true);
+			return channel.size();
+		}
+	}
+
+	/**
+	 * public static AVLTree read(Path path) throws IOException
+	 *
+	 * reads a tree written by write, in O(n) time
+	 * (throws IOException if path is not a snapshot or is truncated or damaged)
+	 */
+	public static AVLTree read(Path path) throws IOException {
+		try (FileChannel keysChannel = FileChannel.open(path, StandardOpenOption.READ);
+				FileChannel valuesChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			while (header.hasRemaining())
+				if (keysChannel.read(header, header.position()) < 0)
+					throw new IOException(path + " is not an AVLTree snapshot");
+			if (header.getInt(H_MAGIC) != MAGIC)
+				throw new IOException(path + " is not an AVLTree snapshot");
+			if (header.getInt(H_VERSION) != VERSION)
+				throw new IOException(path + " has snapshot version " + header.getInt(H_VERSION) + ", expected " + VERSION);
+			boolean compressed = (header.getInt(H_FLAGS) & COMPRESSED) != 0;
+			int count = header.getInt(H_COUNT);
+			long keysLength = header.getLong(H_KEYS_LENGTH);
+			long valuesLength = header.getLong(H_VALUES_LENGTH);
+			if (count < 0 || keysLength < 0 || valuesLength < 0 || HEADER + keysLength + valuesLength != keysChannel.size())
+				throw new IOException(path + " is truncated or damaged");
+
+			keysChannel.position(HEADER);
+			valuesChannel.position(HEADER + keysLength);
+			try (InputStream keys = block(keysChannel, keysLength, compressed);
+					InputStream values = block(valuesChannel, valuesLength, compressed)) {
+				AVLTree tree = AVLTree.fromSortedIterator(new KeyReader(keys, count), new InfoReader(values, !compressed));
+				if (keys.read() >= 0 || values.read() >= 0)
+					throw new IOException(path + " has more data than its " + count + " items");
+				return tree;
+			} catch (UncheckedIOException e) { //thrown by the readers inside fromSortedIterator
+				throw new IOException(path + " is truncated or damaged", e.getCause());
+			}
+		}
+	}
+
+	private static OutputStream block(FileChannel channel, boolean compress) {
+		OutputStream out = new ChannelOutput(channel);
+		if (!compress)
+			return out;
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		return new BufferedOutputStream(new DeflaterOutputStream(out, deflater, BUFFER) {
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					deflater.end();
+				}
+			}
+		}, BUFFER);
+	}
+
+	private static InputStream block(FileChannel channel, long length, boolean compressed) {
+		InputStream in = new ChannelInput(channel, length);
+		if (!compressed)
+			return in;
+		final Inflater inflater = new Inflater();
+		return new BufferedInputStream(new InflaterInputStream(in, inflater, BUFFER) {
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inflater.end();
+				}
+			}
+		}, BUFFER);
+	}
+
+	private static void writeVarLong(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			out.write((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			value |= (long) (b & 0x7f) << shift;
+			if (b < 0x80)
+				return value;
+		}
+		throw new IOException("varint longer than 10 bytes");
+	}
+
+	/*
+	 * decodes the key block. the keys it returns are increasing, or it throws
+	 */
+	private static final class KeyReader implements PrimitiveIterator.OfInt {
+		private final InputStream in;
+		private int remaining;
+		private long prev;
+		private boolean first = true;
+
+		KeyReader(InputStream in, int count) {
+			this.in = in;
+			this.remaining = count;
+		}
+
+		public boolean hasNext() {
+			return remaining > 0;
+		}
+
+		public int nextInt() {
+			if (remaining == 0)
+				throw new NoSuchElementException();
+			remaining--;
+			try {
+				long value = readVarLong(in);
+				long k;
+				if (first) {
+					k = (value >>> 1) ^ -(value & 1);
+					first = false;
+				} else
+					k = prev + value + 1;
+				if (k < Integer.MIN_VALUE || k > Integer.MAX_VALUE || value < 0)
+					throw new IOException("key out of range");
+				prev = k;
+				return (int) k;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/*
+	 * decodes the value block. a length read from the file is checked against the bytes left in an
+	 * uncompressed block, and the buffer only grows as the bytes of an info arrive, so a damaged
+	 * length throws instead of allocating up to 2GB
+	 */
+	private static final class InfoReader implements Iterator<String> {
+		private final InputStream in;
+		private final boolean bounded; //in is a ChannelInput, its available() is the bytes left in the block
+		private byte[] bytes = new byte[64];
+
+		InfoReader(InputStream in, boolean bounded) {
+			this.in = in;
+			this.bounded = bounded;
+		}
+
+		public boolean hasNext() {
+			return true; //the number of items is given by the keys
+		}
+
+		public String next() {
+			try {
+				long length = readVarLong(in) - 1;
+				if (length < 0)
+					return null;
+				if (length > Integer.MAX_VALUE - 8 || bounded && length > in.available())
+					throw new IOException("info of " + length + " bytes");
+				int n = (int) length;
+				for (int read = 0; read < n;) {
+					if (read == bytes.length)
+						bytes = Arrays.copyOf(bytes, (int) Math.min(n, 2L * bytes.length));
+					int r = in.read(bytes, read, Math.min(n, bytes.length) - read);
+					if (r < 0)
+						throw new EOFException();
+					read += r;
+				}
+				return new String(bytes, 0, n, StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/*
+	 * a buffered stream appending to the channel at its position. close flushes and leaves the channel open
+	 */
+	private static final class ChannelOutput extends OutputStream {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+
+		ChannelOutput(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		public void write(int b) throws IOException {
+			if (!buffer.hasRemaining())
+				flush();
+			buffer.put((byte) b);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (!buffer.hasRemaining())
+					flush();
+				int n = Math.min(len, buffer.remaining());
+				buffer.put(b, off, n);
+				off += n;
+				len -= n;
+			}
+		}
+
+		public void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+	/*
+	 * a buffered stream reading length bytes from the channel at its position
+	 */
+	private static final class ChannelInput extends InputStream {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+		private long remaining; //bytes of the block not read from the channel yet
+
+		ChannelInput(FileChannel channel, long length) {
+			this.channel = channel;
+			this.remaining = length;
+			buffer.limit(0);
+		}
+
+		private boolean fill() throws IOException {
+			if (buffer.hasRemaining())
+				return true;
+			if (remaining == 0)
+				return false;
+			buffer.clear();
+			if (remaining < buffer.capacity())
+				buffer.limit((int) remaining);
+			while (buffer.hasRemaining())
+				if (channel.read(buffer) < 0)
+					throw new EOFException();
+			remaining -= buffer.position();
+			buffer.flip();
+			return true;
+		}
+
+		public int read() throws IOException {
+			return fill() ? buffer.get() & 0xff : -1;
+		}
+
+		public int available() { //all the bytes left in the block, not only the buffered ones
+			return (int) Math.min(Integer.MAX_VALUE, remaining + buffer.remaining());
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!fill())
+				return -1;
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+	}
+}
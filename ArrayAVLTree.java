@@ -0,0 +1,432 @@
+import java.util.Arrays;
+
+/**
+ *
+ * ArrayAVLTree
+ *
+ * An AVL Tree with distinct integer keys and info, like AVLTree,
+ * that keeps its nodes in parallel arrays instead of node objects.
+ *
+ * A node is an index into the arrays key/left/right/parent/rank/size/info.
+ * Index 0 (NIL) plays the virtual node: it has rank -1 and size 0, so the
+ * rank and size rules need no null checks. Deleted slots are kept in a
+ * free list (linked through left) and reused by the next inserts.
+ * insert, delete, search, min, max, keysToArray and infoToArray behave like AVLTree's,
+ * including the returned number of rebalancing operations.
+ *
+ */
+
+public class ArrayAVLTree {
+
+	private static final int NIL = 0; //the virtual node
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] key;
+	private int[] left;
+	private int[] right;
+	private int[] parent;
+	private int[] rank;
+	private int[] size;
+	private String[] info;
+
+	private int root = NIL;
+	private int min = NIL; //node with min key in tree
+	private int max = NIL; //node with max key in tree
+	private int used = 1; //slots in [0, used) were handed out at least once
+	private int free = NIL; //head of the free slots list
+
+	public ArrayAVLTree() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * public ArrayAVLTree(int capacity)
+	 *
+	 * creates an empty tree with room for capacity nodes before the arrays grow
+	 */
+	public ArrayAVLTree(int capacity) {
+		capacity = Math.max(capacity, 1) + 1; //slot 0 is NIL
+		key = new int[capacity];
+		left = new int[capacity];
+		right = new int[capacity];
+		parent = new int[capacity];
+		rank = new int[capacity];
+		size = new int[capacity];
+		info = new String[capacity];
+		rank[NIL] = -1;
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 *
+	 */
+	public boolean empty() {
+		return root == NIL;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return size[root];
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		int node = root;
+		while (node != NIL) {
+			int nodeKey = key[node];
+			if (nodeKey == k)
+				return info[node];
+			node = k < nodeKey ? left[node] : right[node];
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		if (root == NIL) {
+			root = newNode(k, i);
+			min = root;
+			max = root;
+			return 0;
+		}
+		int p = NIL;
+		int node = root;
+		while (node != NIL) { //updating the sizes in the route assuming k is not in the tree
+			if (key[node] == k) { //k was already in tree, rolling back the sizes of its ancestors
+				addSize(parent[node], -1);
+				return -1;
+			}
+			size[node]++;
+			p = node;
+			node = k < key[node] ? left[node] : right[node];
+		}
+		int x = newNode(k, i);
+		parent[x] = p;
+		if (k < key[p])
+			left[p] = x;
+		else
+			right[p] = x;
+		if (k < key[min])
+			min = x;
+		if (k > key[max])
+			max = x;
+		return balanceIn(x);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		int last = NIL;
+		int node = root;
+		while (node != NIL && key[node] != k) { //updating the sizes in the route assuming k is in the tree
+			size[node]--;
+			last = node;
+			node = k < key[node] ? left[node] : right[node];
+		}
+		if (node == NIL) { //k was not found, rolling back the sizes in the route
+			addSize(last, 1);
+			return -1;
+		}
+		if (node == min)
+			min = successor(node);
+		if (node == max)
+			max = predecessor(node);
+
+		int p; //the parent of the lowered subtree, balancing starts there
+		if (left[node] != NIL && right[node] != NIL) {
+			int suc = right[node]; //the successor replaces node
+			while (left[suc] != NIL) {
+				size[suc]--;
+				suc = left[suc];
+			}
+			p = parent[suc] == node ? suc : parent[suc];
+			replace(suc, right[suc]);
+			rank[suc] = rank[node];
+			size[suc] = size[node] - 1;
+			left[suc] = left[node];
+			right[suc] = right[node];
+			parent[left[suc]] = suc;
+			if (right[suc] != NIL)
+				parent[right[suc]] = suc;
+			replace(node, suc);
+		} else {
+			p = parent[node];
+			replace(node, left[node] != NIL ? left[node] : right[node]);
+		}
+		freeNode(node);
+		if (p == NIL) //the deleted node was the root with at most one child
+			return 0;
+		return balanceDel(p);
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		return info[min]; //info[NIL] is null
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		return info[max];
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[size()];
+		toArrayRec(root, arr, null, 0);
+		return arr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[size()];
+		toArrayRec(root, null, arr, 0);
+		return arr;
+	}
+
+	/*
+	 * fills the non-null array in order starting at i, returns the next empty place
+	 */
+	private int toArrayRec(int node, int[] arrKeys, String[] arrInfo, int i) {
+		while (node != NIL) { //the right subtree is walked in the loop, only left subtrees recurse
+			i = toArrayRec(left[node], arrKeys, arrInfo, i);
+			if (arrKeys != null)
+				arrKeys[i] = key[node];
+			else
+				arrInfo[i] = info[node];
+			i++;
+			node = right[node];
+		}
+		return i;
+	}
+
+	private int balanceIn(int child) {
+		int count = 0;
+		int p = parent[child];
+		while (p != NIL && rank[p] == rank[child]) {
+			boolean leftChild = left[p] == child;
+			int sibling = leftChild ? right[p] : left[p];
+			if (rank[p] - rank[sibling] == 1) { //case 0 need to promote parent
+				rank[p]++;
+				child = p;
+				p = parent[child];
+				count++;
+				continue;
+			}
+			//rank difference with the sibling is 2
+			int outer = leftChild ? left[child] : right[child];
+			int inner = leftChild ? right[child] : left[child];
+			int difOuter = rank[child] - rank[outer];
+			int difInner = rank[child] - rank[inner];
+			if (difOuter == 1 && difInner == 1) { //case 3, only after join: promote child and rotate
+				rank[child]++;
+				rotateUp(child);
+				count += 2;
+				p = parent[child];
+			} else if (difOuter == 1) { //case 1 single rotation
+				rank[p]--;
+				rotateUp(child);
+				return count + 2;
+			} else { //case 2 double rotation
+				rank[p]--;
+				rank[child]--;
+				rank[inner]++;
+				rotateUp(inner);
+				rotateUp(inner);
+				return count + 5;
+			}
+		}
+		return count;
+	}
+
+	private int balanceDel(int p) {
+		int count = 0;
+		while (p != NIL) {
+			int difLeft = rank[p] - rank[left[p]];
+			int difRight = rank[p] - rank[right[p]];
+			if (difLeft == 2 && difRight == 2) { //case 1 demote
+				rank[p]--;
+				count++;
+				p = parent[p];
+				continue;
+			}
+			if (difLeft != 3 && difRight != 3) //the tree is balanced
+				return count;
+			boolean leftLowered = difLeft == 3;
+			int sibling = leftLowered ? right[p] : left[p];
+			int outer = leftLowered ? right[sibling] : left[sibling];
+			int inner = leftLowered ? left[sibling] : right[sibling];
+			int difOuter = rank[sibling] - rank[outer];
+			int difInner = rank[sibling] - rank[inner];
+			if (difOuter == 1 && difInner == 1) { //case 2 single rotation, done
+				rank[p]--;
+				rank[sibling]++;
+				rotateUp(sibling);
+				return count + 3;
+			} else if (difOuter == 1) { //case 3 single rotation
+				rank[p] -= 2;
+				rotateUp(sibling);
+				count += 3;
+				p = parent[sibling];
+			} else { //case 4 double rotation
+				rank[p] -= 2;
+				rank[sibling]--;
+				rank[inner]++;
+				rotateUp(inner);
+				rotateUp(inner);
+				count += 6;
+				p = parent[inner];
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * rotates y above its parent x (a right rotation if y is a left child, a left rotation otherwise)
+	 * and recomputes the sizes of x and y
+	 */
+	private void rotateUp(int y) {
+		int x = parent[y];
+		int grandParent = parent[x];
+		if (left[x] == y) {
+			left[x] = right[y];
+			parent[left[x]] = x; //writing the parent of NIL is harmless, it is never read
+			right[y] = x;
+		} else {
+			right[x] = left[y];
+			parent[right[x]] = x;
+			left[y] = x;
+		}
+		parent[x] = y;
+		parent[y] = grandParent;
+		if (grandParent == NIL)
+			root = y;
+		else if (left[grandParent] == x)
+			left[grandParent] = y;
+		else
+			right[grandParent] = y;
+		size[x] = size[left[x]] + size[right[x]] + 1;
+		size[y] = size[left[y]] + size[right[y]] + 1;
+	}
+
+	private void replace(int node, int replacement) { //puts replacement in node's place under node's parent
+		int p = parent[node];
+		if (p == NIL)
+			root = replacement;
+		else if (left[p] == node)
+			left[p] = replacement;
+		else
+			right[p] = replacement;
+		parent[replacement] = p;
+	}
+
+	private void addSize(int node, int amount) {
+		for (; node != NIL; node = parent[node])
+			size[node] += amount;
+	}
+
+	private int successor(int node) {
+		if (right[node] != NIL) {
+			node = right[node];
+			while (left[node] != NIL)
+				node = left[node];
+			return node;
+		}
+		while (parent[node] != NIL && right[parent[node]] == node)
+			node = parent[node];
+		return parent[node];
+	}
+
+	private int predecessor(int node) {
+		if (left[node] != NIL) {
+			node = left[node];
+			while (right[node] != NIL)
+				node = right[node];
+			return node;
+		}
+		while (parent[node] != NIL && left[parent[node]] == node)
+			node = parent[node];
+		return parent[node];
+	}
+
+	/*
+	 * returns a leaf slot for (k, i), reusing a free slot if there is one
+	 */
+	private int newNode(int k, String i) {
+		int x = free;
+		if (x != NIL)
+			free = left[x];
+		else {
+			if (used == key.length)
+				grow();
+			x = used++;
+		}
+		key[x] = k;
+		info[x] = i;
+		left[x] = NIL;
+		right[x] = NIL;
+		parent[x] = NIL;
+		rank[x] = 0;
+		size[x] = 1;
+		return x;
+	}
+
+	private void freeNode(int x) {
+		info[x] = null; //letting the info be collected
+		left[x] = free;
+		free = x;
+	}
+
+	private void grow() {
+		int capacity = key.length * 2;
+		key = Arrays.copyOf(key, capacity);
+		left = Arrays.copyOf(left, capacity);
+		right = Arrays.copyOf(right, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		rank = Arrays.copyOf(rank, capacity);
+		size = Arrays.copyOf(size, capacity);
+		info = Arrays.copyOf(info, capacity);
+	}
+}
@@ -0,0 +1,788 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * ConcurrentAVLTree
+ *
+ * A thread-safe AVL tree with distinct integer keys and String info, following the
+ * optimistic concurrent AVL tree of Bronson, Casper, Chafi and Olukotun
+ * ("A Practical Concurrent Binary Search Tree", PPoPP 2010).
+ *
+ * Readers take no locks. Every node has a version (changeOVL) that changes when a rotation
+ * moves the node down, shrinking the range of keys under it, or when the node is unlinked.
+ * A search reads the versions of the nodes on its route hand over hand and retries from the
+ * last node whose version is unchanged. Writers lock only the nodes they link, unlink or rotate,
+ * always a parent before its child.
+ * A deleted node with two children stays in the tree as a routing node (with no item)
+ * and is unlinked once it has at most one child. The tree may be out of balance while
+ * writers are between their update and their rebalancing, and is balanced again when they finish.
+ *
+ * Unlike AVLTree, insert and delete do not count rebalancing operations and
+ * subtree sizes are not kept. min, max and rangeScan are weakly consistent: an item
+ * inserted or deleted during the scan may or may not be seen.
+ *
+ */
+
+public class ConcurrentAVLTree {
+
+	private static final long UNLINKED = 1L; //the node was removed from the tree
+	private static final long SHRINKING = 2L; //a rotation is moving the node down
+	private static final int SPINS = 100; //reads of a shrinking node's version before blocking on its lock
+
+	private static final int UNLINK_REQUIRED = -1;
+	private static final int REBALANCE_REQUIRED = -2;
+	private static final int NOTHING_REQUIRED = -3;
+
+	private static final Object RETRY = new Object(); //an optimistic read saw a changed version
+	private static final Object NULL_INFO = new Object(); //the value stored for a null info
+
+	private final Node rootHolder = new Node(0, null, null); //the root is rootHolder.right
+	private final LongAdder size = new LongAdder();
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 *
+	 */
+	public boolean empty() {
+		return size() == 0;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of items in the tree.
+	 * while writers are running it is an estimate between the sizes before and after them
+	 */
+	public int size() {
+		return size.intValue();
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		return info(get(k));
+	}
+
+	/**
+	 * public boolean contains(int k)
+	 *
+	 * returns true if an item with key k exists in the tree
+	 */
+	public boolean contains(int k) {
+		return get(k) != null;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the tree, if there is no item with key k.
+	 * returns 0, or -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		if (update(k, i == null ? NULL_INFO : i) != null)
+			return -1;
+		size.increment();
+		return 0;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes the item with key k from the tree, if it is there.
+	 * returns 0, or -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		if (update(k, null) == null)
+			return -1;
+		size.decrement();
+		return 0;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		return extreme(Integer.MIN_VALUE, true);
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		return extreme(Integer.MAX_VALUE, false);
+	}
+
+	/**
+	 * public int rangeScan(int lo, int hi, AVLTree.IntObjConsumer consumer)
+	 *
+	 * passes the items with lo <= key <= hi to consumer in increasing key order,
+	 * each found by an optimistic search for the next key, O(log n) per item.
+	 * returns the number of items passed
+	 */
+	public int rangeScan(int lo, int hi, AVLTree.IntObjConsumer consumer) {
+		int count = 0;
+		while (lo <= hi) {
+			Node node = nearest(lo, true);
+			if (node == null || node.key > hi)
+				break;
+			Object value = node.value;
+			if (value != null) { //else it was deleted after it was found
+				consumer.accept(node.key, info(value));
+				count++;
+			}
+			if (node.key == hi)
+				break;
+			lo = node.key + 1;
+		}
+		return count;
+	}
+
+	private static String info(Object value) {
+		return value == NULL_INFO ? null : (String) value;
+	}
+
+	private String extreme(int k, boolean above) {
+		while (true) {
+			Node node = nearest(k, above);
+			if (node == null)
+				return null;
+			Object value = node.value;
+			if (value != null) //else it was deleted after it was found, searching again
+				return info(value);
+		}
+	}
+
+	/*
+	 * returns the value of k (null if k is not in the tree)
+	 */
+	private Object get(int k) {
+		while (true) {
+			Node right = rootHolder.right;
+			if (right == null)
+				return null;
+			if (k == right.key)
+				return right.value;
+			long ovl = right.changeOVL;
+			if (isShrinkingOrUnlinked(ovl))
+				waitUntilShrinkCompleted(right, ovl);
+			else if (right == rootHolder.right) {
+				Object value = attemptGet(k, right, ovl);
+				if (value != RETRY)
+					return value;
+			}
+		}
+	}
+
+	/*
+	 * searches k under node, returns its value, null if it is not in the tree,
+	 * or RETRY if node's version is no longer nodeOVL
+	 */
+	private static Object attemptGet(int k, Node node, long nodeOVL) {
+		boolean goRight = k > node.key;
+		while (true) {
+			Node child = node.child(goRight);
+			if (child == null) {
+				if (node.changeOVL != nodeOVL)
+					return RETRY;
+				return null;
+			}
+			if (k == child.key)
+				return child.value;
+			long childOVL = child.changeOVL;
+			if (isShrinkingOrUnlinked(childOVL)) {
+				waitUntilShrinkCompleted(child, childOVL);
+				if (node.changeOVL != nodeOVL)
+					return RETRY;
+			} else if (child != node.child(goRight)) { //the child changed, reading it again
+				if (node.changeOVL != nodeOVL)
+					return RETRY;
+			} else {
+				if (node.changeOVL != nodeOVL)
+					return RETRY;
+				Object value = attemptGet(k, child, childOVL);
+				if (value != RETRY)
+					return value;
+			}
+		}
+	}
+
+	/*
+	 * returns the node with the smallest key >= k that has an item (the largest key <= k if !above),
+	 * or null if there is none
+	 */
+	private Node nearest(int k, boolean above) {
+		while (true) {
+			Node right = rootHolder.right;
+			if (right == null)
+				return null;
+			long ovl = right.changeOVL;
+			if (isShrinkingOrUnlinked(ovl))
+				waitUntilShrinkCompleted(right, ovl);
+			else if (right == rootHolder.right) {
+				Object found = attemptNearest(k, above, right, ovl);
+				if (found != RETRY && (found != null || right.changeOVL == ovl))
+					return (Node) found;
+			}
+		}
+	}
+
+	/*
+	 * like nearest, in node's subtree. returns RETRY if node's version is no longer nodeOVL
+	 */
+	private static Object attemptNearest(int k, boolean above, Node node, long nodeOVL) {
+		int key = node.key;
+		if (key != k && (above ? key < k : key > k)) //node and the subtree towards k are on the wrong side of k
+			return attemptNearestIn(k, above, node, nodeOVL, above);
+		//the closest keys are in the subtree towards k, then node, then the far subtree
+		if (key != k) {
+			Object found = attemptNearestIn(k, above, node, nodeOVL, !above);
+			if (found != null) //a node or RETRY
+				return found;
+		}
+		Object value = node.value;
+		if (node.changeOVL != nodeOVL)
+			return RETRY;
+		if (value != null)
+			return node;
+		return attemptNearestIn(k, above, node, nodeOVL, above); //node is a routing node
+	}
+
+	private static Object attemptNearestIn(int k, boolean above, Node node, long nodeOVL, boolean goRight) {
+		while (true) {
+			Node child = node.child(goRight);
+			if (node.changeOVL != nodeOVL)
+				return RETRY;
+			if (child == null)
+				return null;
+			long childOVL = child.changeOVL;
+			if (isShrinkingOrUnlinked(childOVL))
+				waitUntilShrinkCompleted(child, childOVL);
+			else if (child == node.child(goRight)) {
+				if (node.changeOVL != nodeOVL)
+					return RETRY;
+				Object found = attemptNearest(k, above, child, childOVL);
+				//nothing found only counts if no rotation moved keys out of child's subtree meanwhile
+				if (found != RETRY && (found != null || child.changeOVL == childOVL))
+					return found;
+			}
+		}
+	}
+
+	/*
+	 * inserts newValue as the value of k if k is not in the tree, or deletes k if newValue is null.
+	 * returns the previous value of k (null if it was not in the tree)
+	 */
+	private Object update(int k, Object newValue) {
+		while (true) {
+			Node right = rootHolder.right;
+			if (right == null) {
+				if (newValue == null || attemptInsertIntoEmpty(k, newValue))
+					return null;
+			} else {
+				long ovl = right.changeOVL;
+				if (isShrinkingOrUnlinked(ovl))
+					waitUntilShrinkCompleted(right, ovl);
+				else if (right == rootHolder.right) {
+					Object prev = attemptUpdate(k, newValue, rootHolder, right, ovl);
+					if (prev != RETRY)
+						return prev;
+				}
+			}
+		}
+	}
+
+	private boolean attemptInsertIntoEmpty(int k, Object value) {
+		synchronized (rootHolder) {
+			if (rootHolder.right != null)
+				return false;
+			rootHolder.right = new Node(k, value, rootHolder);
+			return true;
+		}
+	}
+
+	/*
+	 * like update, in node's subtree (parent is node's parent).
+	 * returns RETRY if node's version is no longer nodeOVL
+	 */
+	private Object attemptUpdate(int k, Object newValue, Node parent, Node node, long nodeOVL) {
+		if (k == node.key)
+			return attemptNodeUpdate(newValue, parent, node);
+		boolean goRight = k > node.key;
+		while (true) {
+			Node child = node.child(goRight);
+			if (node.changeOVL != nodeOVL)
+				return RETRY;
+			if (child == null) {
+				if (newValue == null) //k is not in the tree
+					return null;
+				Node damaged;
+				synchronized (node) {
+					if (node.changeOVL != nodeOVL)
+						return RETRY;
+					if (node.child(goRight) != null) //a concurrent insert took the place, searching from node again
+						continue;
+					node.setChild(goRight, new Node(k, newValue, node));
+					damaged = fixHeight(node);
+				}
+				fixHeightAndRebalance(damaged != null ? damaged : node);
+				return null;
+			}
+			long childOVL = child.changeOVL;
+			if (isShrinkingOrUnlinked(childOVL))
+				waitUntilShrinkCompleted(child, childOVL);
+			else if (child == node.child(goRight)) {
+				if (node.changeOVL != nodeOVL)
+					return RETRY;
+				Object prev = attemptUpdate(k, newValue, node, child, childOVL);
+				if (prev != RETRY)
+					return prev;
+			}
+		}
+	}
+
+	/*
+	 * updates node, whose key is k. a deleted node with at most one child is unlinked,
+	 * one with two children becomes a routing node
+	 */
+	private Object attemptNodeUpdate(Object newValue, Node parent, Node node) {
+		if (newValue == null) {
+			if (node.value == null) //a routing node, k is not in the tree
+				return null;
+			if (node.left == null || node.right == null) {
+				Node damaged;
+				Object prev;
+				synchronized (parent) {
+					if (isUnlinked(parent.changeOVL) || node.parent != parent)
+						return RETRY;
+					synchronized (node) {
+						prev = node.value;
+						if (prev == null)
+							return null;
+						if (!attemptUnlink(parent, node))
+							return RETRY;
+					}
+					damaged = fixHeight(parent);
+				}
+				fixHeightAndRebalance(damaged != null ? damaged : parent);
+				return prev;
+			}
+		}
+		synchronized (node) {
+			if (isUnlinked(node.changeOVL))
+				return RETRY;
+			Object prev = node.value;
+			if (newValue == null) {
+				if (prev != null && (node.left == null || node.right == null)) //it lost a child, it has to be unlinked
+					return RETRY;
+				node.value = null;
+			} else if (prev == null)
+				node.value = newValue; //a routing node gets an item again
+			return prev;
+		}
+	}
+
+	/*
+	 * unlinks node, which has at most one child, from parent. both are locked by the caller.
+	 * returns false if node is no longer parent's child or has two children
+	 */
+	private static boolean attemptUnlink(Node parent, Node node) {
+		Node parentLeft = parent.left;
+		Node parentRight = parent.right;
+		if (parentLeft != node && parentRight != node)
+			return false;
+		Node left = node.left;
+		Node right = node.right;
+		if (left != null && right != null)
+			return false;
+		Node splice = left != null ? left : right;
+		if (parentLeft == node)
+			parent.left = splice;
+		else
+			parent.right = splice;
+		if (splice != null)
+			splice.parent = parent;
+		node.changeOVL = UNLINKED;
+		node.value = null;
+		return true;
+	}
+
+	private static int height(Node node) {
+		return node == null ? 0 : node.height;
+	}
+
+	/*
+	 * returns UNLINK_REQUIRED, REBALANCE_REQUIRED, NOTHING_REQUIRED,
+	 * or the new height of node if only its height is wrong
+	 */
+	private static int nodeCondition(Node node) {
+		Node left = node.left;
+		Node right = node.right;
+		if ((left == null || right == null) && node.value == null)
+			return UNLINK_REQUIRED;
+		int h = node.height;
+		int hL = height(left);
+		int hR = height(right);
+		int hRepl = 1 + Math.max(hL, hR);
+		int balance = hL - hR;
+		if (balance < -1 || balance > 1)
+			return REBALANCE_REQUIRED;
+		return h != hRepl ? hRepl : NOTHING_REQUIRED;
+	}
+
+	/*
+	 * fixes heights, balance and routing nodes from node up to the root.
+	 * the walk does not stop where nothing is required: a rotation returns only one node to fix next,
+	 * so an ancestor above it may still have a stale height
+	 */
+	private void fixHeightAndRebalance(Node node) {
+		while (node != null && node.parent != null) { //the root holder has no parent and is not balanced
+			if (isUnlinked(node.changeOVL)) //the writer that unlinked it fixes the tree from its parent
+				return;
+			int condition = nodeCondition(node);
+			Node next = null;
+			if (condition == UNLINK_REQUIRED || condition == REBALANCE_REQUIRED) {
+				Node parent = node.parent;
+				next = node; //if node moved before it was locked, checking it again
+				synchronized (parent) {
+					if (!isUnlinked(parent.changeOVL) && node.parent == parent) {
+						synchronized (node) {
+							next = rebalance(parent, node);
+						}
+					}
+				}
+			} else if (condition != NOTHING_REQUIRED) {
+				synchronized (node) {
+					next = fixHeight(node);
+				}
+			}
+			node = next != null ? next : node.parent;
+		}
+	}
+
+	/*
+	 * node is locked. fixes its height if that is all it needs, returns the next node to fix or null
+	 */
+	private static Node fixHeight(Node node) {
+		int condition = nodeCondition(node);
+		switch (condition) {
+		case REBALANCE_REQUIRED:
+		case UNLINK_REQUIRED:
+			return node;
+		case NOTHING_REQUIRED:
+			return null;
+		default:
+			node.height = condition;
+			return node.parent;
+		}
+	}
+
+	/*
+	 * parent and node are locked. unlinks node if it is a routing node with at most one child,
+	 * otherwise fixes its height or rotates it. returns the next node to fix or null
+	 */
+	private static Node rebalance(Node parent, Node node) {
+		Node left = node.left;
+		Node right = node.right;
+		if ((left == null || right == null) && node.value == null) {
+			if (attemptUnlink(parent, node))
+				return fixHeight(parent);
+			return node;
+		}
+		int h = node.height;
+		int hL = height(left);
+		int hR = height(right);
+		int hRepl = 1 + Math.max(hL, hR);
+		int balance = hL - hR;
+		if (balance > 1)
+			return rebalanceToRight(parent, node, left, hR);
+		if (balance < -1)
+			return rebalanceToLeft(parent, node, right, hL);
+		if (hRepl != h) {
+			node.height = hRepl;
+			return fixHeight(parent);
+		}
+		return null;
+	}
+
+	private static Node rebalanceToRight(Node parent, Node n, Node nL, int hR) {
+		synchronized (nL) {
+			int hL = nL.height;
+			if (hL - hR <= 1) //nL changed before it was locked
+				return n;
+			Node nLR = nL.right;
+			int hLL = height(nL.left);
+			int hLR0 = height(nLR);
+			if (hLL >= hLR0)
+				return rotateRight(parent, n, nL, hR, hLL, nLR, hLR0);
+			synchronized (nLR) {
+				int hLR = nLR.height;
+				if (hLL >= hLR)
+					return rotateRight(parent, n, nL, hR, hLL, nLR, hLR);
+				int hLRL = height(nLR.left);
+				int balance = hLL - hLRL;
+				if (balance >= -1 && balance <= 1)
+					return rotateRightOverLeft(parent, n, nL, hR, hLL, nLR, hLRL);
+			}
+			//a double rotation would leave nL out of balance, rotating nL left first
+			return rebalanceToLeft(n, nL, nLR, hLL);
+		}
+	}
+
+	private static Node rebalanceToLeft(Node parent, Node n, Node nR, int hL) {
+		synchronized (nR) {
+			int hR = nR.height;
+			if (hL - hR >= -1) //nR changed before it was locked
+				return n;
+			Node nRL = nR.left;
+			int hRL0 = height(nRL);
+			int hRR = height(nR.right);
+			if (hRR >= hRL0)
+				return rotateLeft(parent, n, hL, nR, nRL, hRL0, hRR);
+			synchronized (nRL) {
+				int hRL = nRL.height;
+				if (hRR >= hRL)
+					return rotateLeft(parent, n, hL, nR, nRL, hRL, hRR);
+				int hRLR = height(nRL.right);
+				int balance = hRR - hRLR;
+				if (balance >= -1 && balance <= 1)
+					return rotateLeftOverRight(parent, n, hL, nR, nRL, hRR, hRLR);
+			}
+			//a double rotation would leave nR out of balance, rotating nR right first
+			return rebalanceToRight(n, nR, nRL, hRR);
+		}
+	}
+
+	/*
+	 * the rotations run with parent, n and the nodes that move up locked.
+	 * n moves down, so its version marks it as shrinking until it is done.
+	 * each returns the next node to fix or null
+	 */
+	private static Node rotateRight(Node parent, Node n, Node nL, int hR, int hLL, Node nLR, int hLR) {
+		long nodeOVL = n.changeOVL;
+		Node parentLeft = parent.left;
+		n.changeOVL = beginShrink(nodeOVL);
+		n.left = nLR;
+		if (nLR != null)
+			nLR.parent = n;
+		nL.right = n;
+		n.parent = nL;
+		if (parentLeft == n)
+			parent.left = nL;
+		else
+			parent.right = nL;
+		nL.parent = parent;
+		int hNRepl = 1 + Math.max(hLR, hR);
+		n.height = hNRepl;
+		nL.height = 1 + Math.max(hLL, hNRepl);
+		n.changeOVL = endShrink(nodeOVL);
+
+		int balanceN = hLR - hR;
+		if (balanceN < -1 || balanceN > 1)
+			return n;
+		if ((nLR == null || hR == 0) && n.value == null)
+			return n;
+		int balanceL = hLL - hNRepl;
+		if (balanceL < -1 || balanceL > 1)
+			return nL;
+		if (hLL == 0 && nL.value == null)
+			return nL;
+		return fixHeight(parent);
+	}
+
+	private static Node rotateLeft(Node parent, Node n, int hL, Node nR, Node nRL, int hRL, int hRR) {
+		long nodeOVL = n.changeOVL;
+		Node parentLeft = parent.left;
+		n.changeOVL = beginShrink(nodeOVL);
+		n.right = nRL;
+		if (nRL != null)
+			nRL.parent = n;
+		nR.left = n;
+		n.parent = nR;
+		if (parentLeft == n)
+			parent.left = nR;
+		else
+			parent.right = nR;
+		nR.parent = parent;
+		int hNRepl = 1 + Math.max(hL, hRL);
+		n.height = hNRepl;
+		nR.height = 1 + Math.max(hNRepl, hRR);
+		n.changeOVL = endShrink(nodeOVL);
+
+		int balanceN = hRL - hL;
+		if (balanceN < -1 || balanceN > 1)
+			return n;
+		if ((nRL == null || hL == 0) && n.value == null)
+			return n;
+		int balanceR = hRR - hNRepl;
+		if (balanceR < -1 || balanceR > 1)
+			return nR;
+		if (hRR == 0 && nR.value == null)
+			return nR;
+		return fixHeight(parent);
+	}
+
+	private static Node rotateRightOverLeft(Node parent, Node n, Node nL, int hR, int hLL, Node nLR, int hLRL) {
+		long nodeOVL = n.changeOVL;
+		long leftOVL = nL.changeOVL;
+		Node parentLeft = parent.left;
+		Node nLRL = nLR.left;
+		Node nLRR = nLR.right;
+		int hLRR = height(nLRR);
+		n.changeOVL = beginShrink(nodeOVL);
+		nL.changeOVL = beginShrink(leftOVL);
+		n.left = nLRR;
+		if (nLRR != null)
+			nLRR.parent = n;
+		nL.right = nLRL;
+		if (nLRL != null)
+			nLRL.parent = nL;
+		nLR.left = nL;
+		nL.parent = nLR;
+		nLR.right = n;
+		n.parent = nLR;
+		if (parentLeft == n)
+			parent.left = nLR;
+		else
+			parent.right = nLR;
+		nLR.parent = parent;
+		int hNRepl = 1 + Math.max(hLRR, hR);
+		n.height = hNRepl;
+		int hLRepl = 1 + Math.max(hLL, hLRL);
+		nL.height = hLRepl;
+		n.changeOVL = endShrink(nodeOVL);
+		nL.changeOVL = endShrink(leftOVL);
+		if ((hLL == 0 || hLRL == 0) && nL.value == null) { //nL is a routing node left with one child
+			attemptUnlink(nLR, nL);
+			hLRepl = hLRepl - 1;
+		}
+		nLR.height = 1 + Math.max(hLRepl, hNRepl);
+
+		int balanceN = hLRR - hR;
+		if (balanceN < -1 || balanceN > 1)
+			return n;
+		if ((nLRR == null || hR == 0) && n.value == null)
+			return n;
+		int balanceLR = hLRepl - hNRepl;
+		if (balanceLR < -1 || balanceLR > 1)
+			return nLR;
+		return fixHeight(parent);
+	}
+
+	private static Node rotateLeftOverRight(Node parent, Node n, int hL, Node nR, Node nRL, int hRR, int hRLR) {
+		long nodeOVL = n.changeOVL;
+		long rightOVL = nR.changeOVL;
+		Node parentLeft = parent.left;
+		Node nRLL = nRL.left;
+		Node nRLR = nRL.right;
+		int hRLL = height(nRLL);
+		n.changeOVL = beginShrink(nodeOVL);
+		nR.changeOVL = beginShrink(rightOVL);
+		n.right = nRLL;
+		if (nRLL != null)
+			nRLL.parent = n;
+		nR.left = nRLR;
+		if (nRLR != null)
+			nRLR.parent = nR;
+		nRL.right = nR;
+		nR.parent = nRL;
+		nRL.left = n;
+		n.parent = nRL;
+		if (parentLeft == n)
+			parent.left = nRL;
+		else
+			parent.right = nRL;
+		nRL.parent = parent;
+		int hNRepl = 1 + Math.max(hL, hRLL);
+		n.height = hNRepl;
+		int hRRepl = 1 + Math.max(hRLR, hRR);
+		nR.height = hRRepl;
+		n.changeOVL = endShrink(nodeOVL);
+		nR.changeOVL = endShrink(rightOVL);
+		if ((hRR == 0 || hRLR == 0) && nR.value == null) { //nR is a routing node left with one child
+			attemptUnlink(nRL, nR);
+			hRRepl = hRRepl - 1;
+		}
+		nRL.height = 1 + Math.max(hNRepl, hRRepl);
+
+		int balanceN = hRLL - hL;
+		if (balanceN < -1 || balanceN > 1)
+			return n;
+		if ((nRLL == null || hL == 0) && n.value == null)
+			return n;
+		int balanceRL = hRRepl - hNRepl;
+		if (balanceRL < -1 || balanceRL > 1)
+			return nRL;
+		return fixHeight(parent);
+	}
+
+	private static boolean isShrinkingOrUnlinked(long ovl) {
+		return (ovl & (SHRINKING | UNLINKED)) != 0;
+	}
+
+	private static boolean isUnlinked(long ovl) {
+		return (ovl & UNLINKED) != 0;
+	}
+
+	private static long beginShrink(long ovl) {
+		return ovl | SHRINKING;
+	}
+
+	private static long endShrink(long ovl) {
+		return (ovl | SHRINKING) + SHRINKING; //clears the shrinking bit and carries into the shrink count
+	}
+
+	/*
+	 * waits until the rotation that is moving node down is done
+	 */
+	private static void waitUntilShrinkCompleted(Node node, long ovl) {
+		if ((ovl & SHRINKING) == 0)
+			return;
+		for (int i = 0; i < SPINS; i++) {
+			if (node.changeOVL != ovl)
+				return;
+			Thread.onSpinWait();
+		}
+		synchronized (node) { //the rotation holds node's lock until it is done
+		}
+	}
+
+	private static final class Node {
+		final int key;
+		volatile int height; //a leaf has height 1, an empty subtree 0
+		volatile Object value; //the info (NULL_INFO for null), null in a routing node
+		volatile Node parent;
+		volatile long changeOVL; //the version, see UNLINKED and SHRINKING
+		volatile Node left;
+		volatile Node right;
+
+		Node(int key, Object value, Node parent) {
+			this.key = key;
+			this.height = 1;
+			this.value = value;
+			this.parent = parent;
+		}
+
+		Node child(boolean right) {
+			return right ? this.right : left;
+		}
+
+		void setChild(boolean right, Node child) {
+			if (right)
+				this.right = child;
+			else
+				left = child;
+		}
+	}
+}
@@ -0,0 +1,746 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * DurableAVLTree
+ *
+ * An AVLTree whose insert, delete, split and join survive a crash. Every change is applied to the
+ * tree in memory and appended as a record to a write-ahead log; open replays the log over the
+ * last checkpoint to get the tree back.
+ *
+ * The store is a directory:
+ *  snapshot-g.avls   the tree as of checkpoint g (an AVLTreeSnapshot), once there was a checkpoint
+ *  wal-g.log         the changes made after checkpoint g
+ *
+ * log: a 16 byte header (magic, version, generation), then records of
+ *      payload length (int), CRC32 of the payload (int), payload: type (byte), then
+ *      insert: key, info | delete: key | split: key | join: key, info, item count, the items (key, info)
+ *      where an info is its UTF-8 length (-1 for null) and the bytes.
+ * A record cut off by a crash fails its length or CRC check; open drops it with everything after it.
+ *
+ * checkpoint() starts the log of the next generation, writes the tree as its snapshot and only then
+ * deletes the older log and snapshot, so a crash at any point leaves either the old snapshot with
+ * both logs or the new snapshot with the new log. A checkpoint starts by itself once the log
+ * reaches checkpointBytes, which keeps both the log and the replay at open bounded.
+ *
+ * Records are collected in a buffer and written in groups (group commit). When they are forced
+ * to disk is set by the SyncPolicy:
+ *  SYNC   a change returns once its record is on disk. threads that change the tree at the same
+ *         time share one force: the thread that forces writes every record appended until then
+ *  ASYNC  a background thread forces the log every SYNC_MILLIS, a crash loses at most the changes
+ *         of the last interval
+ *  NONE   the log is written when the buffer fills and forced only by checkpoint, sync and close
+ *
+ * All methods are thread-safe, changes are applied one at a time. If writing the log fails the
+ * tree is ahead of its log, so every later change throws IllegalStateException; open it again
+ * to recover.
+ *
+ */
+
+public class DurableAVLTree {
+
+	/**
+	 * public enum SyncPolicy
+	 *
+	 * when the records of changes are forced to disk (see the class comment)
+	 */
+	public enum SyncPolicy {
+		SYNC, ASYNC, NONE
+	}
+
+	public static final long SYNC_MILLIS = 10;
+	public static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+	private static final int MAGIC = 0x41564c57; //"AVLW"
+	private static final int VERSION = 1;
+	private static final int LOG_HEADER = 16;
+	private static final int RECORD_HEADER = 8;
+	private static final int BUFFER = 1 << 16;
+
+	//record types
+	private static final byte INSERT = 1;
+	private static final byte DELETE = 2;
+	private static final byte SPLIT = 3;
+	private static final byte JOIN = 4;
+
+	private final Path dir;
+	private final SyncPolicy policy;
+	private final long checkpointBytes;
+	private final CRC32 crc = new CRC32();
+	//lock order: channelLock, then this, then syncLock. changes only take this
+	private final Object channelLock = new Object(); //held while buffered records are written to the log
+	private final Object syncLock = new Object();
+
+	private AVLTree tree;
+	private long generation;
+	private FileChannel log;
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER); //records not written to the log yet
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER); //the buffer being written, swapped with buffer
+	private long logBytes; //the size of the log with the buffered records
+	private long appended; //bytes of records appended since open, the end of the last record
+	private long durable; //the records up to here are on disk
+	private boolean syncing; //a thread is forcing the log for the others
+	private IOException failure; //the first failed write of the log
+	private volatile boolean closed;
+	private Thread syncer; //forces the log every SYNC_MILLIS with SyncPolicy.ASYNC
+
+	private DurableAVLTree(Path dir, SyncPolicy policy, long checkpointBytes) {
+		this.dir = dir;
+		this.policy = policy;
+		this.checkpointBytes = checkpointBytes;
+	}
+
+	/**
+	 * public static DurableAVLTree open(Path dir) throws IOException
+	 *
+	 * opens the store in dir with SyncPolicy.SYNC and DEFAULT_CHECKPOINT_BYTES, creating it if it doesn't exist
+	 */
+	public static DurableAVLTree open(Path dir) throws IOException {
+		return open(dir, SyncPolicy.SYNC, DEFAULT_CHECKPOINT_BYTES);
+	}
+
+	/**
+	 * public static DurableAVLTree open(Path dir, SyncPolicy policy, long checkpointBytes) throws IOException
+	 *
+	 * opens the store in dir, creating it if it doesn't exist: reads the last snapshot and replays the
+	 * logs written after it, dropping a record torn by a crash at the end of the last log.
+	 * a checkpoint starts whenever the log reaches checkpointBytes (Long.MAX_VALUE for never)
+	 */
+	public static DurableAVLTree open(Path dir, SyncPolicy policy, long checkpointBytes) throws IOException {
+		Files.createDirectories(dir);
+		List<Long> snapshots = new ArrayList<>();
+		List<Long> logs = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(".tmp")) //a snapshot a crash interrupted
+					Files.delete(file);
+				else if (name.startsWith("snapshot-") && name.endsWith(".avls"))
+					snapshots.add(Long.parseLong(name.substring(9, name.length() - 5)));
+				else if (name.startsWith("wal-") && name.endsWith(".log"))
+					logs.add(Long.parseLong(name.substring(4, name.length() - 4)));
+			}
+		}
+		long first = snapshots.isEmpty() ? 0 : Collections.max(snapshots);
+		DurableAVLTree durable = new DurableAVLTree(dir, policy, checkpointBytes);
+		durable.tree = snapshots.isEmpty() ? new AVLTree() : AVLTreeSnapshot.read(durable.snapshotPath(first));
+		durable.generation = first;
+		Collections.sort(logs);
+		for (int j = 0; j < logs.size(); j++) {
+			long gen = logs.get(j);
+			if (gen < first) //the checkpoint was done, only deleting the older files was missing
+				Files.delete(durable.logPath(gen));
+			else
+				durable.replay(gen, j == logs.size() - 1);
+		}
+		for (long gen : snapshots)
+			if (gen < first)
+				Files.delete(durable.snapshotPath(gen));
+		if (durable.log == null)
+			durable.log = durable.createLog(durable.generation);
+		durable.logBytes = durable.log.size();
+		durable.log.position(durable.logBytes);
+		if (policy == SyncPolicy.ASYNC)
+			durable.startSyncer();
+		return durable;
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree, otherwise null
+	 */
+	public synchronized String search(int k) {
+		return tree.search(k);
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 */
+	public synchronized boolean empty() {
+		return tree.empty();
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public synchronized int size() {
+		return tree.size();
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree, or null if the tree is empty
+	 */
+	public synchronized String min() {
+		return tree.min();
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree, or null if the tree is empty
+	 */
+	public synchronized String max() {
+		return tree.max();
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree, or an empty array if the tree is empty.
+	 */
+	public synchronized int[] keysToArray() {
+		return tree.keysToArray();
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree, sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public synchronized String[] infoToArray() {
+		return tree.infoToArray();
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i, like AVLTree.insert, and logs it.
+	 * returns the number of rebalancing operations, or -1 (and logs nothing) if k is already in the tree.
+	 */
+	public int insert(int k, String i) {
+		int result;
+		long lsn;
+		synchronized (this) {
+			checkWritable();
+			result = tree.insert(k, i);
+			if (result < 0)
+				return result;
+			int start = begin(INSERT);
+			putInt(k);
+			putInfo(i);
+			lsn = end(start);
+		}
+		commit(lsn);
+		return result;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes the item with key k, like AVLTree.delete, and logs it.
+	 * returns the number of rebalancing operations, or -1 (and logs nothing) if k is not in the tree.
+	 */
+	public int delete(int k) {
+		int result;
+		long lsn;
+		synchronized (this) {
+			checkWritable();
+			result = tree.delete(k);
+			if (result < 0)
+				return result;
+			int start = begin(DELETE);
+			putInt(k);
+			lsn = end(start);
+		}
+		commit(lsn);
+		return result;
+	}
+
+	/**
+	 * public AVLTree split(int x)
+	 *
+	 * keeps the items with keys < x in this tree and returns the items with keys > x as a new
+	 * AVLTree, which is not durable. an item with key x is dropped, as in AVLTree.split. O(log n)
+	 */
+	public AVLTree split(int x) {
+		AVLTree above;
+		long lsn;
+		synchronized (this) {
+			checkWritable();
+			AVLTree[] parts = tree.split(x);
+			tree = parts[0];
+			above = parts[1];
+			int start = begin(SPLIT);
+			putInt(x);
+			lsn = end(start);
+		}
+		commit(lsn);
+		return above;
+	}
+
+	/**
+	 * public int join(int k, String i, AVLTree t)
+	 *
+	 * joins (k, i) and the items of t into this tree, like AVLTree.join, and logs them.
+	 * the record holds every item of t, so it costs O(|t|) besides the O(log n) join.
+	 * t must not be used afterwards. returns the cost of AVLTree.join.
+	 * precondition: keys() < k < keys(t) or keys(t) < k < keys() (throws IllegalArgumentException otherwise)
+	 */
+	public int join(int k, String i, AVLTree t) {
+		int result;
+		long lsn;
+		synchronized (this) {
+			checkWritable();
+			if (!(below(tree, k) && above(t, k)) && !(below(t, k) && above(tree, k)))
+				throw new IllegalArgumentException("the keys of the trees are not on both sides of " + k);
+			int start = begin(JOIN);
+			putInt(k);
+			putInfo(i);
+			putInt(t.size());
+			for (AVLTree.EntryIterator it = t.iterator(); it.hasNext();) {
+				putInt(it.nextInt());
+				putInfo(it.info());
+			}
+			lsn = end(start);
+			result = tree.join(tree.new AVLNode(k, i), t);
+		}
+		commit(lsn);
+		return result;
+	}
+
+	private static boolean below(AVLTree t, int k) { //true if every key of t is < k
+		return t.empty() || t.select(t.size() - 1) < k;
+	}
+
+	private static boolean above(AVLTree t, int k) {
+		return t.empty() || t.select(0) > k;
+	}
+
+	/**
+	 * public void sync() throws IOException
+	 *
+	 * forces every change made so far to disk, whatever the SyncPolicy
+	 */
+	public void sync() throws IOException {
+		markDurable(flush(true));
+	}
+
+	/**
+	 * public void checkpoint() throws IOException
+	 *
+	 * writes the tree as a snapshot and deletes the log written before it. changes wait until it
+	 * is done, which takes about as long as AVLTreeSnapshot.write of the tree.
+	 */
+	public void checkpoint() throws IOException {
+		synchronized (channelLock) {
+			synchronized (this) {
+				writeCheckpoint();
+			}
+		}
+	}
+
+	/*
+	 * checkpoints if the log is still full once the locks are held: writers that saw it full
+	 * at the same time wait here, and only the first one writes a snapshot
+	 */
+	private void checkpointIfFull() throws IOException {
+		synchronized (channelLock) {
+			synchronized (this) {
+				if (logFull())
+					writeCheckpoint();
+			}
+		}
+	}
+
+	private void writeCheckpoint() throws IOException { //holding channelLock and this
+		checkWritable();
+		writeBuffer(true);
+		long next = generation + 1;
+		FileChannel nextLog = createLog(next);
+		Path tmp = dir.resolve("snapshot-" + next + ".avls.tmp");
+		try {
+			AVLTreeSnapshot.write(tree, tmp);
+			Files.move(tmp, snapshotPath(next), StandardCopyOption.ATOMIC_MOVE);
+			syncDirectory(dir);
+		} catch (IOException e) { //nothing changed, the tree goes on with its current log
+			nextLog.close();
+			Files.deleteIfExists(tmp);
+			Files.deleteIfExists(logPath(next));
+			throw e;
+		}
+		log.close();
+		log = nextLog;
+		Files.delete(logPath(generation));
+		Files.deleteIfExists(snapshotPath(generation));
+		generation = next;
+		logBytes = LOG_HEADER;
+		markDurable(appended);
+	}
+
+	/**
+	 * public void close() throws IOException
+	 *
+	 * forces the log to disk and closes it. the tree can't be used afterwards
+	 */
+	public void close() throws IOException {
+		synchronized (channelLock) {
+			synchronized (this) {
+				if (closed)
+					return;
+				closed = true;
+				try {
+					if (failure == null)
+						writeBuffer(true);
+				} finally {
+					log.close();
+				}
+				markDurable(appended);
+			}
+		}
+		if (syncer != null) {
+			syncer.interrupt();
+			try {
+				syncer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void checkWritable() {
+		if (closed)
+			throw new IllegalStateException("the tree in " + dir + " is closed");
+		if (failure != null)
+			throw new IllegalStateException("writing the log in " + dir + " failed, open it again to recover", failure);
+	}
+
+	/*
+	 * makes the record ending at lsn as durable as the policy asks, and starts a checkpoint if the log is full
+	 */
+	private void commit(long lsn) {
+		try {
+			if (policy == SyncPolicy.SYNC)
+				awaitDurable(lsn);
+			else if (buffered() >= BUFFER)
+				flush(false);
+			if (logFull())
+				checkpointIfFull();
+		} catch (IOException e) {
+			throw new IllegalStateException("can't write the log in " + dir, e);
+		}
+	}
+
+	private synchronized int buffered() {
+		return buffer.position();
+	}
+
+	private synchronized boolean logFull() {
+		return logBytes >= checkpointBytes && !closed;
+	}
+
+	/*
+	 * returns once the log is forced up to lsn. if no other thread is forcing it, this thread does,
+	 * for every record buffered until then. the others wait and usually find their record on disk after it
+	 */
+	private void awaitDurable(long lsn) throws IOException {
+		boolean interrupted = false;
+		synchronized (syncLock) {
+			while (durable < lsn && syncing) {
+				try {
+					syncLock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (durable >= lsn) {
+				if (interrupted)
+					Thread.currentThread().interrupt();
+				return;
+			}
+			syncing = true;
+		}
+		long end = -1;
+		try {
+			end = flush(true);
+		} finally {
+			synchronized (syncLock) {
+				syncing = false;
+				if (end > durable)
+					durable = end;
+				syncLock.notifyAll();
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private void markDurable(long end) {
+		synchronized (syncLock) {
+			if (end > durable)
+				durable = end;
+			syncLock.notifyAll();
+		}
+	}
+
+	/*
+	 * writes the buffered records to the log, forcing it if force. returns the end of the records written
+	 */
+	private long flush(boolean force) throws IOException {
+		synchronized (channelLock) {
+			ByteBuffer out;
+			long end;
+			synchronized (this) {
+				checkWritable();
+				out = buffer;
+				buffer = spare;
+				end = appended;
+			}
+			try {
+				out.flip();
+				while (out.hasRemaining())
+					log.write(out);
+				if (force)
+					log.force(false);
+			} catch (IOException e) {
+				fail(e);
+				throw e;
+			} finally {
+				out.clear();
+				spare = out;
+			}
+			return end;
+		}
+	}
+
+	/*
+	 * writes the buffered records to the log while holding both locks
+	 */
+	private void writeBuffer(boolean force) throws IOException {
+		try {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				log.write(buffer);
+			if (force)
+				log.force(false);
+		} catch (IOException e) {
+			fail(e);
+			throw e;
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	private synchronized void fail(IOException e) {
+		if (failure == null)
+			failure = e;
+	}
+
+	private void startSyncer() {
+		syncer = new Thread(() -> {
+			while (!closed) {
+				try {
+					Thread.sleep(SYNC_MILLIS);
+					markDurable(flush(true));
+				} catch (InterruptedException | IllegalStateException e) { //closed, or the log failed
+					return;
+				} catch (IOException e) {
+					return; //flush marked the tree failed, changes throw from now on
+				}
+			}
+		}, "DurableAVLTree sync " + dir);
+		syncer.setDaemon(true);
+		syncer.start();
+	}
+
+	//appending records to the buffer, with this held
+
+	private int begin(byte type) {
+		ensure(RECORD_HEADER + 1);
+		int start = buffer.position();
+		buffer.position(start + RECORD_HEADER);
+		buffer.put(type);
+		return start;
+	}
+
+	private long end(int start) { //fills in the length and CRC of the record, returns its end
+		int length = buffer.position() - start - RECORD_HEADER;
+		crc.reset();
+		crc.update(buffer.array(), start + RECORD_HEADER, length);
+		buffer.putInt(start, length);
+		buffer.putInt(start + 4, (int) crc.getValue());
+		appended += length + RECORD_HEADER;
+		logBytes += length + RECORD_HEADER;
+		return appended;
+	}
+
+	private void putInt(int value) {
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	private void putInfo(String info) {
+		if (info == null) {
+			putInt(-1);
+			return;
+		}
+		byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+		ensure(4 + bytes.length);
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+	private void ensure(int bytes) {
+		if (buffer.remaining() >= bytes)
+			return;
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+		buffer.flip();
+		larger.put(buffer);
+		buffer = larger;
+	}
+
+	//the files of the store
+
+	private Path logPath(long gen) {
+		return dir.resolve("wal-" + gen + ".log");
+	}
+
+	private Path snapshotPath(long gen) {
+		return dir.resolve("snapshot-" + gen + ".avls");
+	}
+
+	private FileChannel createLog(long gen) throws IOException {
+		FileChannel channel = FileChannel.open(logPath(gen), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+		header.putInt(MAGIC).putInt(VERSION).putLong(gen).flip();
+		while (header.hasRemaining())
+			channel.write(header);
+		channel.force(true);
+		syncDirectory(dir);
+		return channel;
+	}
+
+	private static void syncDirectory(Path dir) throws IOException {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true); //makes created, renamed and deleted files durable
+		} catch (IOException e) {
+			//some platforms can't open a directory, their file systems order metadata changes anyway
+		}
+	}
+
+	/*
+	 * applies the records of log gen to the tree. in the last log, a record torn by a crash and
+	 * everything after it is cut off and writing goes on from there
+	 */
+	private void replay(long gen, boolean last) throws IOException {
+		Path path = logPath(gen);
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long size = channel.size();
+			ByteBuffer header = read(channel, 0, LOG_HEADER);
+			if (header == null || header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != gen) {
+				if (!last || size > LOG_HEADER)
+					throw new IOException(path + " is not the log of generation " + gen);
+				channel.close(); //the crash came while the log was created
+				log = createLog(gen);
+				generation = gen;
+				return;
+			}
+			long position = LOG_HEADER;
+			while (position < size) {
+				ByteBuffer record = null;
+				ByteBuffer recordHeader = read(channel, position, RECORD_HEADER);
+				if (recordHeader != null) {
+					int length = recordHeader.getInt();
+					int checksum = recordHeader.getInt();
+					if (length > 0 && length <= size - position - RECORD_HEADER) {
+						record = read(channel, position + RECORD_HEADER, length);
+						crc.reset();
+						crc.update(record.array(), 0, length);
+						if ((int) crc.getValue() != checksum)
+							record = null;
+					}
+				}
+				if (record == null) {
+					if (!last)
+						throw new IOException(path + " is damaged at byte " + position);
+					channel.truncate(position);
+					channel.force(true);
+					break;
+				}
+				apply(record, path);
+				position += RECORD_HEADER + record.capacity();
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		if (last) {
+			log = channel;
+			generation = gen;
+		} else
+			channel.close();
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(length);
+		while (bytes.hasRemaining())
+			if (channel.read(bytes, position + bytes.position()) < 0)
+				return null;
+		bytes.flip();
+		return bytes;
+	}
+
+	private void apply(ByteBuffer record, Path path) throws IOException {
+		try {
+			byte type = record.get();
+			switch (type) {
+			case INSERT:
+				tree.insert(record.getInt(), getInfo(record));
+				break;
+			case DELETE:
+				tree.delete(record.getInt());
+				break;
+			case SPLIT:
+				tree = tree.split(record.getInt())[0];
+				break;
+			case JOIN:
+				int k = record.getInt();
+				String info = getInfo(record);
+				int count = record.getInt();
+				int[] keys = new int[count];
+				String[] infos = new String[count];
+				for (int j = 0; j < count; j++) {
+					keys[j] = record.getInt();
+					infos[j] = getInfo(record);
+				}
+				tree.join(tree.new AVLNode(k, info), AVLTree.fromSorted(keys, infos));
+				break;
+			default:
+				throw new IOException(path + " has a record of unknown type " + type);
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+			throw new IOException(path + " has a damaged record", e);
+		}
+	}
+
+	private static String getInfo(ByteBuffer record) {
+		int length = record.getInt();
+		if (length < 0)
+			return null;
+		String info = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+		record.position(record.position() + length);
+		return info;
+	}
+}
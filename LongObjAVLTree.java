@@ -0,0 +1,542 @@
+/**
+ *
+ * LongObjAVLTree
+ *
+ * An implementation of a AVL Tree with
+ * distinct long keys and generic (V) info,
+ * without boxing.
+ *
+ * It runs the same algorithm as AVLTree (same rank rules, same rebalancing cases
+ * and the same returned counts), with null children instead of virtual nodes.
+ * IntIntAVLTree, IntLongAVLTree, LongObjAVLTree and ObjObjAVLTree are generated from one
+ * template, templates/SpecializedAVLTree.template: change the template, not this file, and run
+ * java templates/GenerateTrees.java from the top of the repository.
+ *
+ */
+
+public class LongObjAVLTree<V> {
+
+	private Node<V> root;
+	private Node<V> min; //node with min key in tree
+	private Node<V> max; //node with max key in tree
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 *
+	 */
+	public boolean empty() {
+		return root == null;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return size(root);
+	}
+
+	/**
+	 * public V search(long k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public V search(long k) {
+		Node<V> node = searchNode(k);
+		return node == null ? null : node.info;
+	}
+
+	/**
+	 * public boolean contains(long k)
+	 *
+	 * returns true if and only if an item with key k is in the tree
+	 */
+	public boolean contains(long k) {
+		return searchNode(k) != null;
+	}
+
+	private Node<V> searchNode(long k) {
+		Node<V> node = root;
+		while (node != null) {
+			long key = node.key;
+			if (key == k)
+				return node;
+			node = k < key ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(long k, V i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(long k, V i) {
+		if (root == null) {
+			root = new Node<>(k, i);
+			min = root;
+			max = root;
+			return 0;
+		}
+		Node<V> parent = null;
+		Node<V> node = root;
+		while (node != null) { //updating the sizes in the route assuming k is not in the tree
+			if (node.key == k) { //k was already in tree, rolling back the sizes of its ancestors
+				addSize(node.parent, -1);
+				return -1;
+			}
+			node.size++;
+			parent = node;
+			node = k < node.key ? node.left : node.right;
+		}
+		Node<V> newNode = new Node<>(k, i);
+		newNode.parent = parent;
+		if (k < parent.key)
+			parent.left = newNode;
+		else
+			parent.right = newNode;
+		if (k < min.key)
+			min = newNode;
+		if (k > max.key)
+			max = newNode;
+		return balanceIn(newNode);
+	}
+
+	/**
+	 * public int delete(long k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(long k) {
+		Node<V> last = null;
+		Node<V> node = root;
+		while (node != null && node.key != k) { //updating the sizes in the route assuming k is in the tree
+			node.size--;
+			last = node;
+			node = k < node.key ? node.left : node.right;
+		}
+		if (node == null) { //k was not found, rolling back the sizes in the route
+			addSize(last, 1);
+			return -1;
+		}
+		if (node == min)
+			min = successor(node);
+		if (node == max)
+			max = predecessor(node);
+
+		Node<V> parent; //the parent of the lowered subtree, balancing starts there
+		if (node.left != null && node.right != null) {
+			Node<V> suc = node.right; //the successor replaces node
+			while (suc.left != null) {
+				suc.size--;
+				suc = suc.left;
+			}
+			parent = suc.parent == node ? suc : suc.parent;
+			replace(suc, suc.right);
+			suc.rank = node.rank;
+			suc.size = node.size - 1;
+			suc.left = node.left;
+			suc.right = node.right;
+			suc.left.parent = suc;
+			if (suc.right != null)
+				suc.right.parent = suc;
+			replace(node, suc);
+		} else {
+			parent = node.parent;
+			replace(node, node.left != null ? node.left : node.right);
+		}
+		if (parent == null) //the deleted node was the root with at most one child
+			return 0;
+		return balanceDel(parent);
+	}
+
+	/**
+	 * public V min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public V min() {
+		if (root == null)
+			return null;
+		return min.info;
+	}
+
+	/**
+	 * public V max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public V max() {
+		if (root == null)
+			return null;
+		return max.info;
+	}
+
+	/**
+	 * public long[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public long[] keysToArray() {
+		long[] arr = new long[size()];
+		int i = 0;
+		for (Node<V> node = first(); node != null; node = successor(node))
+			arr[i++] = node.key;
+		return arr;
+	}
+
+	/**
+	 * public Object[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public Object[] infoToArray() {
+		Object[] arr = new Object[size()];
+		int i = 0;
+		for (Node<V> node = first(); node != null; node = successor(node))
+			arr[i++] = node.info;
+		return arr;
+	}
+
+	/**
+	 * public LongObjAVLTree<V>[] split(long x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+	 * the nodes are moved to t1 and t2, this tree is left empty.
+	 * precondition: contains(x)
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public LongObjAVLTree<V>[] split(long x) {
+		Node<V> node = searchNode(x);
+		LongObjAVLTree<V> t1 = new LongObjAVLTree<>();
+		LongObjAVLTree<V> t2 = new LongObjAVLTree<>();
+		t1.root = detach(node.left);
+		t2.root = detach(node.right);
+		Node<V> child = node;
+		Node<V> parent = node.parent;
+		while (parent != null) { //every ancestor joins the side it is on, with its other subtree
+			Node<V> next = parent.parent;
+			if (parent.left == child) {
+				Node<V> right = detach(parent.right);
+				t2.link(t2.root, reset(parent), right);
+			} else {
+				Node<V> left = detach(parent.left);
+				t1.link(left, reset(parent), t1.root);
+			}
+			child = parent;
+			parent = next;
+		}
+		t1.updateMinMax();
+		t2.updateMinMax();
+		root = null;
+		min = null;
+		max = null;
+		return new LongObjAVLTree[] { t1, t2 };
+	}
+
+	/**
+	 * public int join(long k, V i, LongObjAVLTree<V> t)
+	 *
+	 * joins t and a new item (k, i) with the tree.
+	 * the nodes of t are moved to this tree, t is left empty.
+	 * Returns the complexity of the operation (rank difference between the tree and t, plus one)
+	 * precondition: keys(t) < k < keys() or keys() < k < keys(t)
+	 */
+	public int join(long k, V i, LongObjAVLTree<V> t) {
+		Node<V> x = new Node<>(k, i);
+		boolean tSmallerKeys; //if true t is the left subtree of x, else the right subtree
+		if (root != null)
+			tSmallerKeys = root.key > k;
+		else
+			tSmallerKeys = t.root != null && t.root.key < k;
+		LongObjAVLTree<V> smaller = tSmallerKeys ? t : this;
+		LongObjAVLTree<V> bigger = tSmallerKeys ? this : t;
+		Node<V> newMin = smaller.root != null ? smaller.min : x;
+		Node<V> newMax = bigger.root != null ? bigger.max : x;
+		int complexity = link(smaller.root, x, bigger.root);
+		min = newMin;
+		max = newMax;
+		if (t != this) {
+			t.root = null;
+			t.min = null;
+			t.max = null;
+		}
+		return complexity;
+	}
+
+	/*
+	 * makes x the root of the tree made of l, x and r (keys(l) < x < keys(r))
+	 * x is hung on the spine of the higher tree at the rank of the lower one and balanced from there.
+	 * returns the rank difference between l and r plus one
+	 */
+	private int link(Node<V> l, Node<V> x, Node<V> r) {
+		int rankL = rank(l);
+		int rankR = rank(r);
+		if (rankL == rankR) {
+			x.rank = rankL + 1;
+			setChildren(x, l, r);
+			x.parent = null;
+			root = x;
+			return 1;
+		}
+		int amount = (rankL < rankR ? size(l) : size(r)) + 1; //added under every node in the route to x
+		Node<V> parent = null;
+		if (rankL > rankR) {
+			Node<V> node = l;
+			while (node != null && node.rank > rankR) {
+				node.size += amount;
+				parent = node;
+				node = node.right;
+			}
+			x.rank = rankR + 1;
+			setChildren(x, node, r);
+			parent.right = x;
+			root = l;
+		} else {
+			Node<V> node = r;
+			while (node != null && node.rank > rankL) {
+				node.size += amount;
+				parent = node;
+				node = node.left;
+			}
+			x.rank = rankL + 1;
+			setChildren(x, l, node);
+			parent.left = x;
+			root = r;
+		}
+		x.parent = parent;
+		root.parent = null;
+		balanceIn(x);
+		return Math.abs(rankL - rankR) + 1;
+	}
+
+	private int balanceIn(Node<V> child) {
+		int count = 0;
+		Node<V> parent = child.parent;
+		while (parent != null && parent.rank == child.rank) {
+			boolean leftChild = parent.left == child;
+			Node<V> sibling = leftChild ? parent.right : parent.left;
+			if (parent.rank - rank(sibling) == 1) { //case 0 need to promote parent
+				parent.rank++;
+				child = parent;
+				parent = child.parent;
+				count++;
+				continue;
+			}
+			//rank difference with the sibling is 2
+			Node<V> outer = leftChild ? child.left : child.right;
+			Node<V> inner = leftChild ? child.right : child.left;
+			int difOuter = child.rank - rank(outer);
+			int difInner = child.rank - rank(inner);
+			if (difOuter == 1 && difInner == 1) { //case 3, only after join: promote child and rotate
+				child.rank++;
+				rotateUp(child);
+				count += 2;
+				parent = child.parent;
+			} else if (difOuter == 1) { //case 1 single rotation
+				parent.rank--;
+				rotateUp(child);
+				return count + 2;
+			} else { //case 2 double rotation
+				parent.rank--;
+				child.rank--;
+				inner.rank++;
+				rotateUp(inner);
+				rotateUp(inner);
+				return count + 5;
+			}
+		}
+		return count;
+	}
+
+	private int balanceDel(Node<V> parent) {
+		int count = 0;
+		while (parent != null) {
+			int difLeft = parent.rank - rank(parent.left);
+			int difRight = parent.rank - rank(parent.right);
+			if (difLeft == 2 && difRight == 2) { //case 1 demote
+				parent.rank--;
+				count++;
+				parent = parent.parent;
+				continue;
+			}
+			if (difLeft != 3 && difRight != 3) //the tree is balanced
+				return count;
+			boolean leftLowered = difLeft == 3;
+			Node<V> sibling = leftLowered ? parent.right : parent.left;
+			Node<V> outer = leftLowered ? sibling.right : sibling.left;
+			Node<V> inner = leftLowered ? sibling.left : sibling.right;
+			int difOuter = sibling.rank - rank(outer);
+			int difInner = sibling.rank - rank(inner);
+			if (difOuter == 1 && difInner == 1) { //case 2 single rotation, done
+				parent.rank--;
+				sibling.rank++;
+				rotateUp(sibling);
+				return count + 3;
+			} else if (difOuter == 1) { //case 3 single rotation
+				parent.rank -= 2;
+				rotateUp(sibling);
+				count += 3;
+				parent = sibling.parent;
+			} else { //case 4 double rotation
+				parent.rank -= 2;
+				sibling.rank--;
+				inner.rank++;
+				rotateUp(inner);
+				rotateUp(inner);
+				count += 6;
+				parent = inner.parent;
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * rotates y above its parent x (a right rotation if y is a left child, a left rotation otherwise)
+	 * and recomputes the sizes of x and y
+	 */
+	private void rotateUp(Node<V> y) {
+		Node<V> x = y.parent;
+		Node<V> grandParent = x.parent;
+		if (x.left == y) {
+			x.left = y.right;
+			if (x.left != null)
+				x.left.parent = x;
+			y.right = x;
+		} else {
+			x.right = y.left;
+			if (x.right != null)
+				x.right.parent = x;
+			y.left = x;
+		}
+		x.parent = y;
+		y.parent = grandParent;
+		if (grandParent == null)
+			root = y;
+		else if (grandParent.left == x)
+			grandParent.left = y;
+		else
+			grandParent.right = y;
+		x.size = size(x.left) + size(x.right) + 1;
+		y.size = size(y.left) + size(y.right) + 1;
+	}
+
+	private void replace(Node<V> node, Node<V> replacement) { //puts replacement in node's place under node's parent
+		Node<V> parent = node.parent;
+		if (parent == null)
+			root = replacement;
+		else if (parent.left == node)
+			parent.left = replacement;
+		else
+			parent.right = replacement;
+		if (replacement != null)
+			replacement.parent = parent;
+	}
+
+	private void addSize(Node<V> node, int amount) {
+		for (; node != null; node = node.parent)
+			node.size += amount;
+	}
+
+	private void updateMinMax() {
+		min = first();
+		max = root;
+		if (max != null)
+			while (max.right != null)
+				max = max.right;
+	}
+
+	private Node<V> first() {
+		Node<V> node = root;
+		if (node != null)
+			while (node.left != null)
+				node = node.left;
+		return node;
+	}
+
+	private static <V> Node<V> successor(Node<V> node) {
+		if (node.right != null) {
+			node = node.right;
+			while (node.left != null)
+				node = node.left;
+			return node;
+		}
+		while (node.parent != null && node.parent.right == node)
+			node = node.parent;
+		return node.parent;
+	}
+
+	private static <V> Node<V> predecessor(Node<V> node) {
+		if (node.left != null) {
+			node = node.left;
+			while (node.right != null)
+				node = node.right;
+			return node;
+		}
+		while (node.parent != null && node.parent.left == node)
+			node = node.parent;
+		return node.parent;
+	}
+
+	private static <V> Node<V> detach(Node<V> node) {
+		if (node != null)
+			node.parent = null;
+		return node;
+	}
+
+	private static <V> Node<V> reset(Node<V> node) { //turns a tree node into a single node, ready to be linked
+		node.left = null;
+		node.right = null;
+		node.parent = null;
+		node.rank = 0;
+		node.size = 1;
+		return node;
+	}
+
+	private static <V> void setChildren(Node<V> x, Node<V> left, Node<V> right) {
+		x.left = left;
+		x.right = right;
+		if (left != null)
+			left.parent = x;
+		if (right != null)
+			right.parent = x;
+		x.size = size(left) + size(right) + 1;
+	}
+
+	private static int rank(Node<?> node) {
+		return node == null ? -1 : node.rank;
+	}
+
+	private static int size(Node<?> node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static final class Node<V> {
+		private final long key;
+		private final V info;
+		private int rank;
+		private int size = 1;
+		private Node<V> left;
+		private Node<V> right;
+		private Node<V> parent;
+
+		Node(long key, V info) {
+			this.key = key;
+			this.info = info;
+		}
+	}
+}
@@ -0,0 +1,953 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * MappedAVLTree
+ *
+ * An AVL Tree with distinct integer keys and String info, like AVLTree,
+ * whose nodes live off-heap in a memory-mapped file. Reopening the file gives
+ * the tree back as it was at the last checkpoint, without re-inserting anything.
+ *
+ * The store is three files:
+ *  path          a 4096 byte header, then fixed size node records
+ *  path.values   an append-only area of info strings (int length, UTF-8 bytes)
+ *  path.undo     the original content of every page of path changed since the last checkpoint
+ *
+ * header: magic, version, used node slots, free list head, end of the values area,
+ *         then a table of tree roots (root, min, max, in use) so that
+ *         the trees made by split live in the same store.
+ * node record (32 bytes): key, left, right, parent, rank, size, info offset (long).
+ * node 0 is the virtual node (rank -1, size 0), deleted nodes go to a free list.
+ * Info of deleted nodes stays in the values area, it is never compacted.
+ *
+ * Writes go to the mapped memory, checkpoint() forces the files to disk and empties the undo log.
+ * Before the first change to a 4096 byte page of path after a checkpoint, the page is appended to
+ * the undo log and the log is forced, so the OS never writes a changed page whose original is not
+ * on disk. open() copies the logged pages back, which restores the store as of the last
+ * checkpoint after a crash (or an exit without close). Pages past the nodes used at the last
+ * checkpoint and the values area past its end then are new, they are never logged.
+ * So the first change to each page after a checkpoint costs a forced write of 4KB, shared by all
+ * the later changes to the page until the next checkpoint.
+ *
+ * Both mappings are limited to 2GB (about 67M nodes).
+ *
+ */
+
+public class MappedAVLTree {
+
+	private static final int MAGIC = 0x41564c4d; //"AVLM"
+	private static final int VERSION = 2; //1 had a dirty flag instead of the undo log
+	private static final int HEADER = 4096;
+	private static final int MAX_TREES = (HEADER - 64) / 16;
+	private static final int NIL = 0; //the virtual node
+
+	//header fields
+	private static final int H_MAGIC = 0;
+	private static final int H_VERSION = 4;
+	private static final int H_USED = 8;
+	private static final int H_FREE = 12;
+	private static final int H_VALUES_END = 16;
+	private static final int H_TREES = 64;
+
+	//node record fields
+	private static final int NODE_BYTES = 32;
+	private static final int KEY = 0;
+	private static final int LEFT = 4;
+	private static final int RIGHT = 8;
+	private static final int PARENT = 12;
+	private static final int RANK = 16;
+	private static final int SIZE = 20;
+	private static final int INFO = 24;
+
+	private static final long NO_INFO = -1; //info offset of a null info
+	private static final int VALUES_START = 8;
+
+	private static final int PAGE = 4096; //the unit of the undo log
+	private static final int UNDO_RECORD = 12; //page index, length, CRC32 of both and the bytes, then the bytes
+
+	private final Store store;
+	private final int id; //index in the header's tree table
+
+	private MappedAVLTree(Store store, int id) {
+		this.store = store;
+		this.id = id;
+	}
+
+	/**
+	 * public static MappedAVLTree open(Path path) throws IOException
+	 *
+	 * opens the store at path, creating an empty one if it doesn't exist,
+	 * and returns its first tree (id 0)
+	 */
+	public static MappedAVLTree open(Path path) throws IOException {
+		return new MappedAVLTree(new Store(path), 0);
+	}
+
+	/**
+	 * public MappedAVLTree tree(int id)
+	 *
+	 * returns the tree with the given id in this tree's store (see id() and split)
+	 */
+	public MappedAVLTree tree(int id) {
+		if (id < 0 || id >= MAX_TREES || store.nodes.getInt(treeField(id, 12)) == 0)
+			throw new IllegalArgumentException("no tree " + id + " in " + store.path);
+		return new MappedAVLTree(store, id);
+	}
+
+	/**
+	 * public int id()
+	 *
+	 * returns the id of this tree in its store
+	 */
+	public int id() {
+		return id;
+	}
+
+	/**
+	 * public void checkpoint() throws IOException
+	 *
+	 * forces all changes of the store (all its trees) to disk
+	 */
+	public void checkpoint() throws IOException {
+		store.checkpoint();
+	}
+
+	/**
+	 * public void close() throws IOException
+	 *
+	 * checkpoints and closes the store. the store's trees can't be used after this
+	 */
+	public void close() throws IOException {
+		store.checkpoint();
+		store.close();
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 *
+	 */
+	public boolean empty() {
+		return root() == NIL;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return size(root());
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		int node = root();
+		while (node != NIL) {
+			int nodeKey = key(node);
+			if (nodeKey == k)
+				return info(node);
+			node = k < nodeKey ? left(node) : right(node);
+		}
+		return null;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		return empty() ? null : info(minNode());
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		return empty() ? null : info(maxNode());
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		if (empty()) {
+			int x = newNode(k, i);
+			setRoot(x);
+			setMin(x);
+			setMax(x);
+			return 0;
+		}
+		int p = NIL;
+		int node = root();
+		while (node != NIL) { //updating the sizes in the route assuming k is not in the tree
+			if (key(node) == k) { //k was already in tree, rolling back the sizes of its ancestors
+				addSize(parent(node), -1);
+				return -1;
+			}
+			setSize(node, size(node) + 1);
+			p = node;
+			node = k < key(node) ? left(node) : right(node);
+		}
+		int x = newNode(k, i);
+		setParent(x, p);
+		if (k < key(p))
+			setLeft(p, x);
+		else
+			setRight(p, x);
+		if (k < key(minNode()))
+			setMin(x);
+		if (k > key(maxNode()))
+			setMax(x);
+		return balanceIn(x);
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there.
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		int last = NIL;
+		int node = root();
+		while (node != NIL && key(node) != k) { //updating the sizes in the route assuming k is in the tree
+			setSize(node, size(node) - 1);
+			last = node;
+			node = k < key(node) ? left(node) : right(node);
+		}
+		if (node == NIL) { //k was not found, rolling back the sizes in the route
+			addSize(last, 1);
+			return -1;
+		}
+		if (node == minNode())
+			setMin(successor(node));
+		if (node == maxNode())
+			setMax(predecessor(node));
+
+		int p; //the parent of the lowered subtree, balancing starts there
+		if (left(node) != NIL && right(node) != NIL) {
+			int suc = right(node); //the successor replaces node
+			while (left(suc) != NIL) {
+				setSize(suc, size(suc) - 1);
+				suc = left(suc);
+			}
+			p = parent(suc) == node ? suc : parent(suc);
+			replace(suc, right(suc));
+			setRank(suc, rank(node));
+			setSize(suc, size(node) - 1);
+			setLeft(suc, left(node));
+			setRight(suc, right(node));
+			setParent(left(suc), suc);
+			setParent(right(suc), suc); //writing the parent of NIL is harmless, it is never read
+			replace(node, suc);
+		} else {
+			p = parent(node);
+			replace(node, left(node) != NIL ? left(node) : right(node));
+		}
+		freeNode(node);
+		if (p == NIL) //the deleted node was the root with at most one child
+			return 0;
+		return balanceDel(p);
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		int[] arr = new int[size()];
+		int i = 0;
+		for (int node = empty() ? NIL : minNode(); node != NIL; node = successor(node))
+			arr[i++] = key(node);
+		return arr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		String[] arr = new String[size()];
+		int i = 0;
+		for (int node = empty() ? NIL : minNode(); node != NIL; node = successor(node))
+			arr[i++] = info(node);
+		return arr;
+	}
+
+	/**
+	 * public MappedAVLTree[] split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x.
+	 * Returns an array [t1, t2] with two AVL trees of this store. keys(t1) < x < keys(t2).
+	 * t1 is this tree (it keeps its id), t2 is a new tree of the store.
+	 * precondition: search(x) != null (throws NoSuchElementException otherwise, leaving the tree as it was)
+	 */
+	public MappedAVLTree[] split(int x) {
+		int node = root();
+		while (node != NIL && key(node) != x)
+			node = x < key(node) ? left(node) : right(node);
+		if (node == NIL) //checked before the store is touched
+			throw new NoSuchElementException("no key " + x);
+		MappedAVLTree t2 = new MappedAVLTree(store, store.newTree());
+		int smaller = detach(left(node));
+		int bigger = detach(right(node));
+		int child = node;
+		int p = parent(node);
+		while (p != NIL) { //every ancestor joins the side it is on, with its other subtree
+			int next = parent(p);
+			if (left(p) == child) {
+				int r = detach(right(p));
+				bigger = link(bigger, reset(p), r);
+			} else {
+				int l = detach(left(p));
+				smaller = link(l, reset(p), smaller);
+			}
+			child = p;
+			p = next;
+		}
+		freeNode(node);
+		setRoot(smaller);
+		updateMinMax();
+		t2.setRoot(bigger);
+		t2.updateMinMax();
+		return new MappedAVLTree[] { this, t2 };
+	}
+
+	/**
+	 * public int join(int k, String i, MappedAVLTree t)
+	 *
+	 * joins t and a new item (k, i) with the tree. t must be a tree of the same store,
+	 * its nodes are moved to this tree and t is removed from the store.
+	 * Returns the complexity of the operation (rank difference between the tree and t, plus one)
+	 * precondition: keys(t) < k < keys() or keys() < k < keys(t)
+	 */
+	public int join(int k, String i, MappedAVLTree t) {
+		if (t.store != store || t.id == id)
+			throw new IllegalArgumentException("t must be another tree of the same store");
+		int x = newNode(k, i);
+		boolean tSmallerKeys; //if true t is the left subtree of x, else the right subtree
+		if (!empty())
+			tSmallerKeys = key(root()) > k;
+		else
+			tSmallerKeys = !t.empty() && key(t.root()) < k;
+		MappedAVLTree smaller = tSmallerKeys ? t : this;
+		MappedAVLTree bigger = tSmallerKeys ? this : t;
+		int newMin = smaller.empty() ? x : smaller.minNode();
+		int newMax = bigger.empty() ? x : bigger.maxNode();
+		int rankDiff = Math.abs(rank(smaller.root()) - rank(bigger.root()));
+		setRoot(link(smaller.root(), x, bigger.root()));
+		setMin(newMin);
+		setMax(newMax);
+		store.dropTree(t.id);
+		return rankDiff + 1;
+	}
+
+	/**
+	 * public void drop()
+	 *
+	 * deletes all the items of the tree and removes it from the store.
+	 * tree 0 can't be dropped, it is only emptied.
+	 */
+	public void drop() {
+		int node = root();
+		while (node != NIL) { //freeing the nodes without recursion, cutting each node from its parent first
+			if (left(node) != NIL)
+				node = left(node);
+			else if (right(node) != NIL)
+				node = right(node);
+			else {
+				int p = parent(node);
+				if (p != NIL) {
+					if (left(p) == node)
+						setLeft(p, NIL);
+					else
+						setRight(p, NIL);
+				}
+				freeNode(node);
+				node = p;
+			}
+		}
+		setRoot(NIL);
+		setMin(NIL);
+		setMax(NIL);
+		if (id != 0)
+			store.dropTree(id);
+	}
+
+	/*
+	 * returns the root of the tree made of l, x and r (keys(l) < x < keys(r)), all detached.
+	 * x is hung on the spine of the higher tree at the rank of the lower one and balanced from there.
+	 */
+	private int link(int l, int x, int r) {
+		int rankL = rank(l);
+		int rankR = rank(r);
+		if (rankL == rankR) {
+			setRank(x, rankL + 1);
+			setChildren(x, l, r);
+			return x;
+		}
+		int amount = (rankL < rankR ? size(l) : size(r)) + 1; //added under every node in the route to x
+		int p = NIL;
+		int top;
+		if (rankL > rankR) {
+			int node = l;
+			while (node != NIL && rank(node) > rankR) {
+				setSize(node, size(node) + amount);
+				p = node;
+				node = right(node);
+			}
+			setRank(x, rankR + 1);
+			setChildren(x, node, r);
+			setRight(p, x);
+			top = l;
+		} else {
+			int node = r;
+			while (node != NIL && rank(node) > rankL) {
+				setSize(node, size(node) + amount);
+				p = node;
+				node = left(node);
+			}
+			setRank(x, rankL + 1);
+			setChildren(x, l, node);
+			setLeft(p, x);
+			top = r;
+		}
+		setParent(x, p);
+		//balancing may rotate at the top, rotateUp keeps the table entry of this tree on the top.
+		//the entry is only read back here, split and join set it when they are done
+		setRoot(top);
+		balanceIn(x);
+		return root();
+	}
+
+	private int balanceIn(int child) {
+		int count = 0;
+		int p = parent(child);
+		while (p != NIL && rank(p) == rank(child)) {
+			boolean leftChild = left(p) == child;
+			int sibling = leftChild ? right(p) : left(p);
+			if (rank(p) - rank(sibling) == 1) { //case 0 need to promote parent
+				setRank(p, rank(p) + 1);
+				child = p;
+				p = parent(child);
+				count++;
+				continue;
+			}
+			//rank difference with the sibling is 2
+			int outer = leftChild ? left(child) : right(child);
+			int inner = leftChild ? right(child) : left(child);
+			int difOuter = rank(child) - rank(outer);
+			int difInner = rank(child) - rank(inner);
+			if (difOuter == 1 && difInner == 1) { //case 3, only after join: promote child and rotate
+				setRank(child, rank(child) + 1);
+				rotateUp(child);
+				count += 2;
+				p = parent(child);
+			} else if (difOuter == 1) { //case 1 single rotation
+				setRank(p, rank(p) - 1);
+				rotateUp(child);
+				return count + 2;
+			} else { //case 2 double rotation
+				setRank(p, rank(p) - 1);
+				setRank(child, rank(child) - 1);
+				setRank(inner, rank(inner) + 1);
+				rotateUp(inner);
+				rotateUp(inner);
+				return count + 5;
+			}
+		}
+		return count;
+	}
+
+	private int balanceDel(int p) {
+		int count = 0;
+		while (p != NIL) {
+			int difLeft = rank(p) - rank(left(p));
+			int difRight = rank(p) - rank(right(p));
+			if (difLeft == 2 && difRight == 2) { //case 1 demote
+				setRank(p, rank(p) - 1);
+				count++;
+				p = parent(p);
+				continue;
+			}
+			if (difLeft != 3 && difRight != 3) //the tree is balanced
+				return count;
+			boolean leftLowered = difLeft == 3;
+			int sibling = leftLowered ? right(p) : left(p);
+			int outer = leftLowered ? right(sibling) : left(sibling);
+			int inner = leftLowered ? left(sibling) : right(sibling);
+			int difOuter = rank(sibling) - rank(outer);
+			int difInner = rank(sibling) - rank(inner);
+			if (difOuter == 1 && difInner == 1) { //case 2 single rotation, done
+				setRank(p, rank(p) - 1);
+				setRank(sibling, rank(sibling) + 1);
+				rotateUp(sibling);
+				return count + 3;
+			} else if (difOuter == 1) { //case 3 single rotation
+				setRank(p, rank(p) - 2);
+				rotateUp(sibling);
+				count += 3;
+				p = parent(sibling);
+			} else { //case 4 double rotation
+				setRank(p, rank(p) - 2);
+				setRank(sibling, rank(sibling) - 1);
+				setRank(inner, rank(inner) + 1);
+				rotateUp(inner);
+				rotateUp(inner);
+				count += 6;
+				p = parent(inner);
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * rotates y above its parent x (a right rotation if y is a left child, a left rotation otherwise)
+	 * and recomputes the sizes of x and y
+	 */
+	private void rotateUp(int y) {
+		int x = parent(y);
+		int grandParent = parent(x);
+		if (left(x) == y) {
+			setLeft(x, right(y));
+			setParent(left(x), x);
+			setRight(y, x);
+		} else {
+			setRight(x, left(y));
+			setParent(right(x), x);
+			setLeft(y, x);
+		}
+		setParent(x, y);
+		setParent(y, grandParent);
+		if (grandParent == NIL)
+			setRoot(y);
+		else if (left(grandParent) == x)
+			setLeft(grandParent, y);
+		else
+			setRight(grandParent, y);
+		setSize(x, size(left(x)) + size(right(x)) + 1);
+		setSize(y, size(left(y)) + size(right(y)) + 1);
+	}
+
+	private void replace(int node, int replacement) { //puts replacement in node's place under node's parent
+		int p = parent(node);
+		if (p == NIL)
+			setRoot(replacement);
+		else if (left(p) == node)
+			setLeft(p, replacement);
+		else
+			setRight(p, replacement);
+		setParent(replacement, p);
+	}
+
+	private void setChildren(int x, int l, int r) {
+		setLeft(x, l);
+		setRight(x, r);
+		setParent(l, x);
+		setParent(r, x);
+		setSize(x, size(l) + size(r) + 1);
+	}
+
+	private void addSize(int node, int amount) {
+		for (; node != NIL; node = parent(node))
+			setSize(node, size(node) + amount);
+	}
+
+	private void updateMinMax() {
+		int lo = root();
+		int hi = root();
+		if (lo != NIL) {
+			while (left(lo) != NIL)
+				lo = left(lo);
+			while (right(hi) != NIL)
+				hi = right(hi);
+		}
+		setMin(lo);
+		setMax(hi);
+	}
+
+	private int successor(int node) {
+		if (right(node) != NIL) {
+			node = right(node);
+			while (left(node) != NIL)
+				node = left(node);
+			return node;
+		}
+		while (parent(node) != NIL && right(parent(node)) == node)
+			node = parent(node);
+		return parent(node);
+	}
+
+	private int predecessor(int node) {
+		if (left(node) != NIL) {
+			node = left(node);
+			while (right(node) != NIL)
+				node = right(node);
+			return node;
+		}
+		while (parent(node) != NIL && left(parent(node)) == node)
+			node = parent(node);
+		return parent(node);
+	}
+
+	private int detach(int node) {
+		setParent(node, NIL);
+		return node;
+	}
+
+	private int reset(int node) { //turns a tree node into a single node, ready to be linked
+		setLeft(node, NIL);
+		setRight(node, NIL);
+		setParent(node, NIL);
+		setRank(node, 0);
+		setSize(node, 1);
+		return node;
+	}
+
+	private int newNode(int k, String i) {
+		int x = store.allocateNode();
+		int base = store.offset(x);
+		store.beforeWrite(base); //a record never crosses a page
+		MappedByteBuffer nodes = store.nodes; //allocateNode may have remapped the file
+		nodes.putInt(base + KEY, k);
+		nodes.putInt(base + LEFT, NIL);
+		nodes.putInt(base + RIGHT, NIL);
+		nodes.putInt(base + PARENT, NIL);
+		nodes.putInt(base + RANK, 0);
+		nodes.putInt(base + SIZE, 1);
+		nodes.putLong(base + INFO, store.appendValue(i));
+		return x;
+	}
+
+	private void freeNode(int x) {
+		store.freeNode(x);
+	}
+
+	//the tree's entry in the header table
+	private static int treeField(int id, int field) {
+		return H_TREES + id * 16 + field;
+	}
+
+	private int root() {
+		return store.nodes.getInt(treeField(id, 0));
+	}
+
+	private void setRoot(int node) {
+		store.putInt(treeField(id, 0), node);
+		setParent(node, NIL);
+	}
+
+	private int minNode() {
+		return store.nodes.getInt(treeField(id, 4));
+	}
+
+	private void setMin(int node) {
+		store.putInt(treeField(id, 4), node);
+	}
+
+	private int maxNode() {
+		return store.nodes.getInt(treeField(id, 8));
+	}
+
+	private void setMax(int node) {
+		store.putInt(treeField(id, 8), node);
+	}
+
+	//node field accessors
+	private int key(int node) {
+		return store.nodes.getInt(store.offset(node) + KEY);
+	}
+
+	private int left(int node) {
+		return store.nodes.getInt(store.offset(node) + LEFT);
+	}
+
+	private void setLeft(int node, int child) {
+		store.putInt(store.offset(node) + LEFT, child);
+	}
+
+	private int right(int node) {
+		return store.nodes.getInt(store.offset(node) + RIGHT);
+	}
+
+	private void setRight(int node, int child) {
+		store.putInt(store.offset(node) + RIGHT, child);
+	}
+
+	private int parent(int node) {
+		return store.nodes.getInt(store.offset(node) + PARENT);
+	}
+
+	private void setParent(int node, int p) {
+		store.putInt(store.offset(node) + PARENT, p);
+	}
+
+	private int rank(int node) {
+		return store.nodes.getInt(store.offset(node) + RANK);
+	}
+
+	private void setRank(int node, int rank) {
+		store.putInt(store.offset(node) + RANK, rank);
+	}
+
+	private int size(int node) {
+		return store.nodes.getInt(store.offset(node) + SIZE);
+	}
+
+	private void setSize(int node, int size) {
+		store.putInt(store.offset(node) + SIZE, size);
+	}
+
+	private String info(int node) {
+		return store.readValue(store.nodes.getLong(store.offset(node) + INFO));
+	}
+
+	/**
+	 * private static class Store
+	 *
+	 * the two mapped files of a store and its undo log, shared by all the trees in it.
+	 * it hands out node slots and appends info strings, growing and remapping the files as needed.
+	 * every write to the node file goes through putInt, putLong or beforeWrite, which log the page first.
+	 */
+	private static class Store {
+		private final Path path;
+		private final FileChannel nodeChannel;
+		private final FileChannel valueChannel;
+		private final FileChannel undoChannel;
+		private MappedByteBuffer nodes;
+		private MappedByteBuffer values;
+		private final BitSet logged = new BitSet(); //the pages in the undo log
+		private long newFrom; //pages from here on hold no node of the last checkpoint
+		private final CRC32 crc = new CRC32();
+
+		Store(Path path) throws IOException {
+			this.path = path;
+			nodeChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			valueChannel = FileChannel.open(Paths.get(path + ".values"), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			undoChannel = FileChannel.open(Paths.get(path + ".undo"), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			boolean created = nodeChannel.size() == 0;
+			nodes = nodeChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+					Math.max(nodeChannel.size(), HEADER + 1024L * NODE_BYTES));
+			values = valueChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+					Math.max(valueChannel.size(), 64 * 1024L));
+			if (created) {
+				nodes.putInt(H_MAGIC, MAGIC);
+				nodes.putInt(H_VERSION, VERSION);
+				nodes.putInt(H_USED, 1);
+				nodes.putInt(H_FREE, NIL);
+				nodes.putLong(H_VALUES_END, VALUES_START);
+				nodes.putInt(HEADER + RANK, -1); //node 0 is the virtual node
+				nodes.putInt(HEADER + SIZE, 0);
+				nodes.putInt(treeField(0, 12), 1); //tree 0 always exists
+				values.putInt(0, MAGIC);
+				checkpoint();
+			} else {
+				rollBack(); //the header itself may be a changed page
+				if (nodes.getInt(H_MAGIC) != MAGIC || nodes.getInt(H_VERSION) != VERSION)
+					throw new IOException(path + " is not a MappedAVLTree store");
+				newFrom = offset(nodes.getInt(H_USED));
+			}
+		}
+
+		/*
+		 * copies every page of the undo log back to the node file, forces it and empties the log.
+		 * a torn last record is ignored: the log is forced before its page is changed, so that page wasn't
+		 */
+		private void rollBack() throws IOException {
+			long length = undoChannel.size();
+			if (length == 0)
+				return;
+			ByteBuffer head = ByteBuffer.allocate(UNDO_RECORD);
+			byte[] page = new byte[PAGE];
+			for (long at = 0; at + UNDO_RECORD <= length;) {
+				head.clear();
+				while (head.hasRemaining())
+					undoChannel.read(head, at + head.position());
+				int index = head.getInt(0);
+				int n = head.getInt(4);
+				if (index < 0 || n < 0 || n > PAGE || at + UNDO_RECORD + n > length
+						|| (long) index * PAGE + n > nodes.capacity())
+					break;
+				ByteBuffer data = ByteBuffer.wrap(page, 0, n);
+				while (data.hasRemaining())
+					undoChannel.read(data, at + UNDO_RECORD + data.position());
+				crc.reset();
+				crc.update(head.array(), 0, 8);
+				crc.update(page, 0, n);
+				if ((int) crc.getValue() != head.getInt(8))
+					break;
+				nodes.put(index * PAGE, page, 0, n);
+				at += UNDO_RECORD + n;
+			}
+			nodes.force();
+			undoChannel.truncate(0);
+			undoChannel.force(true);
+		}
+
+		int offset(int node) {
+			return HEADER + node * NODE_BYTES;
+		}
+
+		/*
+		 * logs the page of the node file holding at, if it holds nodes of the last checkpoint
+		 * and isn't logged yet. the record is on disk before this returns
+		 */
+		void beforeWrite(int at) {
+			int index = at / PAGE;
+			long start = (long) index * PAGE;
+			if (start >= newFrom || logged.get(index))
+				return;
+			int n = (int) Math.min(PAGE, nodes.capacity() - start);
+			ByteBuffer record = ByteBuffer.allocate(UNDO_RECORD + n);
+			record.putInt(index).putInt(n).putInt(0);
+			nodes.get((int) start, record.array(), UNDO_RECORD, n);
+			crc.reset();
+			crc.update(record.array(), 0, 8);
+			crc.update(record.array(), UNDO_RECORD, n);
+			record.putInt(8, (int) crc.getValue());
+			record.clear();
+			try {
+				long end = undoChannel.size();
+				while (record.hasRemaining())
+					undoChannel.write(record, end + record.position());
+				undoChannel.force(false);
+			} catch (IOException e) {
+				throw new IllegalStateException("can't write the undo log of " + path, e);
+			}
+			logged.set(index);
+		}
+
+		void putInt(int at, int value) {
+			beforeWrite(at);
+			nodes.putInt(at, value);
+		}
+
+		void putLong(int at, long value) {
+			beforeWrite(at); //the long fields are 8-aligned, they don't cross a page
+			nodes.putLong(at, value);
+		}
+
+		void checkpoint() throws IOException {
+			values.force();
+			nodes.force();
+			undoChannel.truncate(0); //the pages are on disk, their originals aren't needed
+			undoChannel.force(true);
+			logged.clear();
+			newFrom = offset(nodes.getInt(H_USED));
+		}
+
+		void close() throws IOException {
+			nodeChannel.close();
+			valueChannel.close();
+			undoChannel.close();
+		}
+
+		int allocateNode() {
+			int x = nodes.getInt(H_FREE);
+			if (x != NIL) {
+				putInt(H_FREE, nodes.getInt(offset(x) + LEFT));
+				return x;
+			}
+			x = nodes.getInt(H_USED);
+			if ((long) offset(x + 1) > nodes.capacity())
+				nodes = remap(nodeChannel, nodes, (long) offset(x + 1));
+			putInt(H_USED, x + 1);
+			return x;
+		}
+
+		void freeNode(int x) {
+			putInt(offset(x) + LEFT, nodes.getInt(H_FREE));
+			putInt(H_FREE, x);
+		}
+
+		long appendValue(String info) {
+			if (info == null)
+				return NO_INFO;
+			byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+			long at = nodes.getLong(H_VALUES_END);
+			long end = at + 4 + bytes.length;
+			if (end > values.capacity())
+				values = remap(valueChannel, values, end);
+			values.putInt((int) at, bytes.length);
+			values.put((int) at + 4, bytes);
+			putLong(H_VALUES_END, end);
+			return at;
+		}
+
+		String readValue(long at) {
+			if (at == NO_INFO)
+				return null;
+			byte[] bytes = new byte[values.getInt((int) at)];
+			values.get((int) at + 4, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		int newTree() {
+			for (int t = 1; t < MAX_TREES; t++) {
+				if (nodes.getInt(treeField(t, 12)) == 0) {
+					putInt(treeField(t, 0), NIL);
+					putInt(treeField(t, 4), NIL);
+					putInt(treeField(t, 8), NIL);
+					putInt(treeField(t, 12), 1);
+					return t;
+				}
+			}
+			throw new IllegalStateException(path + " already holds " + MAX_TREES + " trees");
+		}
+
+		void dropTree(int t) {
+			putInt(treeField(t, 0), NIL);
+			putInt(treeField(t, 4), NIL);
+			putInt(treeField(t, 8), NIL);
+			if (t != 0)
+				putInt(treeField(t, 12), 0);
+		}
+
+		//maps the file again with at least the needed capacity, doubling it
+		private static MappedByteBuffer remap(FileChannel channel, MappedByteBuffer old, long needed) {
+			long capacity = Math.max(needed, Math.min(2L * old.capacity(), Integer.MAX_VALUE));
+			if (capacity > Integer.MAX_VALUE)
+				throw new IllegalStateException("a MappedAVLTree file is limited to 2GB");
+			try {
+				return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			} catch (IOException e) {
+				throw new IllegalStateException("can't grow the mapped file", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,382 @@
+/**
+ *
+ * PersistentAVLTree
+ *
+ * An AVL Tree with distinct integer keys and info, like AVLTree, whose nodes are immutable.
+ * insert and delete copy the O(log n) nodes on the route to the key (path copying) and
+ * share every other node with the previous version, so an old version never changes.
+ * snapshot() returns such a version in O(1): reporting threads can read it while the writer
+ * keeps changing the tree, and versions nobody refers to any more are collected by the GC.
+ *
+ * Every node keeps its rank and subtree size, so both are correct in every version.
+ * split and join also leave their inputs unchanged and return new trees sharing their nodes.
+ *
+ * A tree is changed by one writer at a time. Its current version is published through a
+ * volatile field, so snapshots can be taken and read from any thread.
+ *
+ */
+
+public class PersistentAVLTree {
+
+	private volatile Node root; //null if the tree is empty
+
+	public PersistentAVLTree() {
+	}
+
+	private PersistentAVLTree(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * public PersistentAVLTree snapshot()
+	 *
+	 * returns the current version of the tree in O(1). later changes of this tree do not change it,
+	 * and changes of the snapshot do not change this tree
+	 */
+	public PersistentAVLTree snapshot() {
+		return new PersistentAVLTree(root);
+	}
+
+	/**
+	 * public boolean empty()
+	 *
+	 * returns true if and only if the tree is empty
+	 *
+	 */
+	public boolean empty() {
+		return root == null;
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 */
+	public int size() {
+		return size(root);
+	}
+
+	/**
+	 * public String search(int k)
+	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 */
+	public String search(int k) {
+		Node node = root;
+		while (node != null) {
+			if (k == node.key)
+				return node.info;
+			node = k < node.key ? node.left : node.right;
+		}
+		return null;
+	}
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the tree, copying the route to it.
+	 * returns 0, or -1 if an item with key k already exists in the tree.
+	 */
+	public int insert(int k, String i) {
+		Node old = root;
+		Node updated = insert(old, k, i);
+		if (updated == old) //k was already in the tree, nothing was copied
+			return -1;
+		root = updated;
+		return 0;
+	}
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes the item with key k from the tree, if it is there, copying the route to it.
+	 * returns 0, or -1 if an item with key k was not found in the tree.
+	 */
+	public int delete(int k) {
+		Node old = root;
+		Node updated = delete(old, k);
+		if (updated == old)
+			return -1;
+		root = updated;
+		return 0;
+	}
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String min() {
+		Node node = root;
+		if (node == null)
+			return null;
+		while (node.left != null)
+			node = node.left;
+		return node.info;
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 */
+	public String max() {
+		Node node = root;
+		if (node == null)
+			return null;
+		while (node.right != null)
+			node = node.right;
+		return node.info;
+	}
+
+	/**
+	 * public int select(int rank)
+	 *
+	 * Returns the key with exactly rank smaller keys in the tree (select(0) is the min key)
+	 *
+	 * precondition: 0 <= rank < size() (throws IndexOutOfBoundsException otherwise)
+	 */
+	public int select(int rank) {
+		Node node = root;
+		if (rank < 0 || rank >= size(node))
+			throw new IndexOutOfBoundsException("rank " + rank + " out of range for size " + size(node));
+		while (true) {
+			int leftSize = size(node.left);
+			if (rank == leftSize)
+				return node.key;
+			if (rank < leftSize)
+				node = node.left;
+			else {
+				rank -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 */
+	public int[] keysToArray() {
+		Node node = root;
+		int[] arr = new int[size(node)];
+		toArrayRec(node, arr, null, 0);
+		return arr;
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 */
+	public String[] infoToArray() {
+		Node node = root;
+		String[] arr = new String[size(node)];
+		toArrayRec(node, null, arr, 0);
+		return arr;
+	}
+
+	/**
+	 * public PersistentAVLTree[] split(int x)
+	 *
+	 * returns two new trees [t1, t2] with keys(t1) < x < keys(t2), leaving this tree unchanged.
+	 * only the O(log n) nodes on the route to x are copied.
+	 */
+	public PersistentAVLTree[] split(int x) {
+		Node[] parts = new Node[2];
+		split(root, x, parts);
+		return new PersistentAVLTree[] { new PersistentAVLTree(parts[0]), new PersistentAVLTree(parts[1]) };
+	}
+
+	/**
+	 * public PersistentAVLTree join(int k, String i, PersistentAVLTree t)
+	 *
+	 * returns a new tree of the items of this tree, (k, i) and the items of t,
+	 * leaving both trees unchanged, in O(|rank difference| + 1) time.
+	 * precondition: keys() < k < keys(t) or keys(t) < k < keys() (throws IllegalArgumentException otherwise)
+	 */
+	public PersistentAVLTree join(int k, String i, PersistentAVLTree t) {
+		Node mine = root;
+		Node other = t.root;
+		if (below(mine, k) && above(other, k))
+			return new PersistentAVLTree(join(mine, k, i, other));
+		if (below(other, k) && above(mine, k))
+			return new PersistentAVLTree(join(other, k, i, mine));
+		throw new IllegalArgumentException("the keys of the trees are not on both sides of " + k);
+	}
+
+	private static boolean below(Node node, int k) { //true if the max key of node's subtree is < k
+		if (node == null)
+			return true;
+		while (node.right != null)
+			node = node.right;
+		return node.key < k;
+	}
+
+	private static boolean above(Node node, int k) {
+		if (node == null)
+			return true;
+		while (node.left != null)
+			node = node.left;
+		return node.key > k;
+	}
+
+	private static int rank(Node node) {
+		return node == null ? -1 : node.rank;
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	/*
+	 * returns node's subtree with k inserted, or node itself if k is in it
+	 */
+	private static Node insert(Node node, int k, String i) {
+		if (node == null)
+			return new Node(k, i, null, null);
+		if (k == node.key)
+			return node;
+		if (k < node.key) {
+			Node left = insert(node.left, k, i);
+			if (left == node.left)
+				return node;
+			return balance(node.key, node.info, left, node.right);
+		}
+		Node right = insert(node.right, k, i);
+		if (right == node.right)
+			return node;
+		return balance(node.key, node.info, node.left, right);
+	}
+
+	/*
+	 * returns node's subtree without k, or node itself if k is not in it
+	 */
+	private static Node delete(Node node, int k) {
+		if (node == null)
+			return null;
+		if (k < node.key) {
+			Node left = delete(node.left, k);
+			if (left == node.left)
+				return node;
+			return balance(node.key, node.info, left, node.right);
+		}
+		if (k > node.key) {
+			Node right = delete(node.right, k);
+			if (right == node.right)
+				return node;
+			return balance(node.key, node.info, node.left, right);
+		}
+		if (node.left == null)
+			return node.right;
+		if (node.right == null)
+			return node.left;
+		Node successor = node.right; //the successor replaces node
+		while (successor.left != null)
+			successor = successor.left;
+		return balance(successor.key, successor.info, node.left, deleteMin(node.right));
+	}
+
+	private static Node deleteMin(Node node) {
+		if (node.left == null)
+			return node.right;
+		return balance(node.key, node.info, deleteMin(node.left), node.right);
+	}
+
+	/*
+	 * returns a new node (k, i) over left and right, whose ranks differ by at most 2,
+	 * rotating it if they differ by 2
+	 */
+	private static Node balance(int k, String i, Node left, Node right) {
+		int dif = rank(left) - rank(right);
+		if (dif > 1) {
+			if (rank(left.left) >= rank(left.right)) //single rotation
+				return new Node(left.key, left.info, left.left, new Node(k, i, left.right, right));
+			Node inner = left.right; //double rotation
+			return new Node(inner.key, inner.info, new Node(left.key, left.info, left.left, inner.left),
+					new Node(k, i, inner.right, right));
+		}
+		if (dif < -1) {
+			if (rank(right.right) >= rank(right.left))
+				return new Node(right.key, right.info, new Node(k, i, left, right.left), right.right);
+			Node inner = right.left;
+			return new Node(inner.key, inner.info, new Node(k, i, left, inner.left),
+					new Node(right.key, right.info, inner.right, right.right));
+		}
+		return new Node(k, i, left, right);
+	}
+
+	/*
+	 * returns a tree of left, (k, i) and right, where keys(left) < k < keys(right).
+	 * descends the higher tree along its side facing the lower one, to a subtree of about
+	 * the lower tree's rank, and rebalances the copied route on the way back
+	 */
+	private static Node join(Node left, int k, String i, Node right) {
+		int dif = rank(left) - rank(right);
+		if (dif > 1)
+			return balance(left.key, left.info, left.left, join(left.right, k, i, right));
+		if (dif < -1)
+			return balance(right.key, right.info, join(left, k, i, right.left), right.right);
+		return new Node(k, i, left, right);
+	}
+
+	/*
+	 * puts node's subtree with keys < x in parts[0] and with keys > x in parts[1]
+	 */
+	private static void split(Node node, int x, Node[] parts) {
+		if (node == null) {
+			parts[0] = null;
+			parts[1] = null;
+		} else if (x < node.key) {
+			split(node.left, x, parts);
+			parts[1] = join(parts[1], node.key, node.info, node.right);
+		} else if (x > node.key) {
+			split(node.right, x, parts);
+			parts[0] = join(node.left, node.key, node.info, parts[0]);
+		} else {
+			parts[0] = node.left;
+			parts[1] = node.right;
+		}
+	}
+
+	/*
+	 * fills the non-null array in order starting at i, returns the next empty place
+	 */
+	private static int toArrayRec(Node node, int[] arrKeys, String[] arrInfo, int i) {
+		while (node != null) {
+			i = toArrayRec(node.left, arrKeys, arrInfo, i);
+			if (arrKeys != null)
+				arrKeys[i] = node.key;
+			else
+				arrInfo[i] = node.info;
+			i++;
+			node = node.right;
+		}
+		return i;
+	}
+
+	private static final class Node {
+		final int key;
+		final String info;
+		final int rank; //a leaf has rank 0, an empty subtree -1
+		final int size;
+		final Node left;
+		final Node right;
+
+		Node(int key, String info, Node left, Node right) {
+			this.key = key;
+			this.info = info;
+			this.left = left;
+			this.right = right;
+			this.rank = Math.max(rank(left), rank(right)) + 1;
+			this.size = size(left) + size(right) + 1;
+		}
+	}
+}
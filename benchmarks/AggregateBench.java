@@ -0,0 +1,85 @@
+import java.util.Random;
+
+/**
+ *
+ * AggregateBench
+ *
+ * Sums the keys of windows of w consecutive keys at random places in a tree of n keys,
+ * with rangeScan and with aggregate(lo, hi) of a sum aggregate, and the cost the aggregate adds
+ * to inserting and deleting keys.
+ *
+ * usage: java AggregateBench [n] [w]   (default n = 1000000, w = 10000)
+ *
+ */
+
+public class AggregateBench {
+
+	static final AVLTree.Aggregate<Long> SUM = new AVLTree.Aggregate<Long>() {
+		public Long identity() {
+			return 0L;
+		}
+
+		public Long of(int key, String info) {
+			return (long) key;
+		}
+
+		public Long combine(Long left, Long right) {
+			return left + right;
+		}
+	};
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int w = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		final int[] keys = HeapFootprint.distinctKeys(n, 42);
+		final AVLTree plain = InsertDeleteBench.build(keys);
+		final AVLTree summed = InsertDeleteBench.build(keys);
+		summed.setAggregate(SUM);
+		final int[] starts = new int[1000];
+		Random rnd = new Random(7);
+		for (int j = 0; j < starts.length; j++)
+			starts[j] = rnd.nextInt(n);
+		final long[] sum = new long[1];
+		final AVLTree.IntObjConsumer adder = new AVLTree.IntObjConsumer() {
+			public void accept(int key, String info) {
+				sum[0] += key;
+			}
+		};
+
+		Bench.run("sum via rangeScan (n=" + n + ", w=" + w + ")", new Bench.Iteration() {
+			public long run() {
+				for (int lo : starts) {
+					sum[0] = 0;
+					plain.rangeScan(lo, lo + w - 1, adder);
+					Bench.consume(sum[0]);
+				}
+				return starts.length;
+			}
+		});
+
+		Bench.run("sum via aggregate (n=" + n + ", w=" + w + ")", new Bench.Iteration() {
+			public long run() {
+				for (int lo : starts)
+					Bench.consume(summed.<Long>aggregate(lo, lo + w - 1).longValue());
+				return starts.length;
+			}
+		});
+
+		final int[] batch = new int[100000];
+		for (int j = 0; j < batch.length; j++)
+			batch[j] = n + rnd.nextInt(n); //not in the trees
+		for (final AVLTree tree : new AVLTree[] { plain, summed }) {
+			Bench.run("insert+delete, " + (tree == plain ? "no aggregate" : "sum aggregate") + " (n=" + n + ")",
+					new Bench.Iteration() {
+						public long run() {
+							for (int k : batch)
+								Bench.consume(tree.insert(k, ""));
+							for (int k : batch)
+								Bench.consume(tree.delete(k));
+							return 2L * batch.length;
+						}
+					});
+		}
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
@@ -0,0 +1,51 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ *
+ * BatchBench
+ *
+ * Applies batches of m random new keys to a tree of n keys, one insert/delete at a time
+ * and with insertAll/deleteAll. Every iteration inserts the batch and deletes it again,
+ * so the tree keeps its n keys.
+ *
+ * usage: java BatchBench [n] [m]   (default n = 1000000, m = 100000)
+ *
+ */
+
+public class BatchBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int m = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		final int[] keys = HeapFootprint.distinctKeys(n, 42);
+		for (int j = 0; j < n; j++)
+			keys[j] *= 2; //the batches use odd keys, so they are never in the tree
+		final int[] batch = new int[m];
+		Random rnd = new Random(7);
+		for (int j = 0; j < m; j++)
+			batch[j] = 2 * rnd.nextInt(n) + 1;
+		final String[] infos = new String[m];
+		Arrays.fill(infos, "");
+		final AVLTree tree = InsertDeleteBench.build(keys);
+
+		Bench.run("insert+delete one by one (n=" + n + ", m=" + m + ")", new Bench.Iteration() {
+			public long run() {
+				for (int k : batch)
+					Bench.consume(tree.insert(k, ""));
+				for (int k : batch)
+					Bench.consume(tree.delete(k));
+				return 2L * batch.length;
+			}
+		});
+
+		Bench.run("insertAll+deleteAll (n=" + n + ", m=" + m + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(tree.insertAll(batch, infos));
+				Bench.consume(tree.deleteAll(batch));
+				return 2L * batch.length;
+			}
+		});
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ *
+ * Bench
+ *
+ * A minimal measurement loop shared by the benchmark programs.
+ * Each benchmark is run for a number of warmup iterations that are thrown away,
+ * then for the measured iterations, and the average time per operation is printed.
+ *
+ */
+
+public class Bench {
+
+	/**
+	 * public interface Iteration
+	 *
+	 * one benchmark iteration. setup() is not measured, run() is measured and
+	 * returns the number of operations it performed
+	 */
+	public interface Iteration {
+		default void setup() {
+		}
+
+		long run();
+	}
+
+	public static int warmups = Integer.getInteger("bench.warmups", 5);
+	public static int iterations = Integer.getInteger("bench.iterations", 10);
+
+	private static long sink; //results of the measured code end up here so the JIT can't drop it
+
+	public static void consume(long value) {
+		sink += value;
+	}
+
+	public static void consume(Object value) {
+		if (value != null)
+			sink++;
+	}
+
+	/**
+	 * public static double run(String name, Iteration it)
+	 *
+	 * runs it warmups+iterations times, prints and returns the average ns/op
+	 * of the measured iterations
+	 */
+	public static double run(String name, Iteration it) {
+		long nanos = 0;
+		long ops = 0;
+		for (int i = 0; i < warmups + iterations; i++) {
+			it.setup();
+			long start = System.nanoTime();
+			long n = it.run();
+			long time = System.nanoTime() - start;
+			if (i >= warmups) {
+				nanos += time;
+				ops += n;
+			}
+		}
+		double nsPerOp = (double) nanos / ops;
+		System.out.printf("%-40s %12.1f ns/op %14.0f ops/s%n", name, nsPerOp, 1e9 / nsPerOp);
+		return nsPerOp;
+	}
+
+	/**
+	 * public static long sink()
+	 *
+	 * returns the accumulated results, benchmark programs print it at the end
+	 */
+	public static long sink() {
+		return sink;
+	}
+}
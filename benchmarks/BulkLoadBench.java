@@ -0,0 +1,62 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ *
+ * BulkLoadBench
+ *
+ * Compares building an AVLTree from n sorted keys by n inserts
+ * with the bulk loads fromSorted and fromSortedIterator,
+ * and building from n unsorted keys by n inserts with fromUnsorted.
+ *
+ * usage: java BulkLoadBench [n]   (default n = 1000000)
+ *
+ */
+
+public class BulkLoadBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int[] keys = HeapFootprint.distinctKeys(n, 42);
+		final int[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		final String[] infos = new String[n];
+		Arrays.fill(infos, "");
+
+		Bench.run("sorted inserts (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(InsertDeleteBench.build(sorted));
+				return n;
+			}
+		});
+
+		Bench.run("fromSorted (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(AVLTree.fromSorted(sorted, infos));
+				return n;
+			}
+		});
+
+		Bench.run("fromSortedIterator (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(AVLTree.fromSortedIterator(IntStream.of(sorted).iterator(), Arrays.asList(infos).iterator()));
+				return n;
+			}
+		});
+
+		Bench.run("unsorted inserts (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(InsertDeleteBench.build(keys));
+				return n;
+			}
+		});
+
+		Bench.run("fromUnsorted (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(AVLTree.fromUnsorted(keys, infos));
+				return n;
+			}
+		});
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
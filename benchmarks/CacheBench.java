@@ -0,0 +1,84 @@
+import java.util.SplittableRandom;
+
+/**
+ *
+ * CacheBench
+ *
+ * Searches a tree of n random keys, without a cache and with caches of 1024 and 16384 items,
+ * for 256 hot keys searched uniformly, for Zipfian keys (theta 0.99, the hot keys spread over
+ * the tree) and for uniform keys.
+ * Prints ns/search and the hit rate of each cache.
+ *
+ * usage: java CacheBench [n]   (default n = 1000000)
+ *
+ */
+
+public class CacheBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int[] keys = HeapFootprint.distinctKeys(n, 42); //keys[rank] is the key of popularity rank
+		final AVLTree tree = new AVLTree();
+		for (int k : keys)
+			tree.insert(k, "v" + k);
+
+		final int[] hot = new int[n];
+		final int[] zipfian = new int[n];
+		final int[] uniform = new int[n];
+		SplittableRandom rnd = new SplittableRandom(7);
+		double[] cumulative = zipfCumulative(n, 0.99);
+		for (int j = 0; j < n; j++) {
+			hot[j] = keys[rnd.nextInt(Math.min(n, 256))];
+			zipfian[j] = keys[sample(cumulative, rnd.nextDouble())];
+			uniform[j] = keys[rnd.nextInt(n)];
+		}
+
+		for (String name : new String[] { "hot 256", "zipfian", "uniform" }) {
+			final int[] lookups = name.equals("hot 256") ? hot : name.equals("zipfian") ? zipfian : uniform;
+			for (final int capacity : new int[] { 0, 1024, 16384 }) {
+				Bench.run("search, " + name + ", " + (capacity == 0 ? "no cache" : "cache " + capacity) + " (n=" + n + ")",
+						new Bench.Iteration() {
+							public void setup() {
+								tree.disableCache();
+								if (capacity > 0)
+									tree.enableCache(capacity);
+							}
+
+							public long run() {
+								for (int k : lookups)
+									Bench.consume(tree.search(k));
+								return lookups.length;
+							}
+						});
+				if (capacity > 0)
+					System.out.printf("  hit rate %.3f%n", tree.getCache().hitRate());
+			}
+		}
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+
+	private static double[] zipfCumulative(int n, double theta) { //the probability of ranks 0..i
+		double[] cumulative = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += 1 / Math.pow(i + 1, theta);
+			cumulative[i] = sum;
+		}
+		for (int i = 0; i < n; i++)
+			cumulative[i] /= sum;
+		return cumulative;
+	}
+
+	private static int sample(double[] cumulative, double u) { //the first rank whose cumulative probability is >= u
+		int lo = 0;
+		int hi = cumulative.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cumulative[mid] < u)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
@@ -0,0 +1,103 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * ConcurrentBench
+ *
+ * Throughput of a mixed search/insert/delete workload on n keys, for 1..T threads and several
+ * read percentages, with ConcurrentAVLTree and with AVLTree behind one global lock.
+ * Every thread runs for a fixed time on random keys in [0, 2n); half of the writes are inserts.
+ * On a machine with one core the threads only take turns, so only the single thread rows mean anything there.
+ *
+ * usage: java ConcurrentBench [n] [maxThreads] [millis]   (default n = 1000000, maxThreads = available processors, millis = 1000)
+ *
+ */
+
+public class ConcurrentBench {
+
+	private static final int[] READ_PERCENTS = { 100, 99, 90, 50 };
+
+	interface Target {
+		void op(int k, int kind); //kind 0 search, 1 insert, 2 delete
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long millis = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+		int[] keys = HeapFootprint.distinctKeys(2 * n, 42);
+
+		final ConcurrentAVLTree concurrent = new ConcurrentAVLTree();
+		final AVLTree locked = new AVLTree();
+		for (int j = 0; j < n; j++) {
+			concurrent.insert(keys[j], "");
+			locked.insert(keys[j], "");
+		}
+		Target concurrentTarget = (k, kind) -> {
+			if (kind == 0)
+				Bench.consume(concurrent.search(k));
+			else if (kind == 1)
+				concurrent.insert(k, "");
+			else
+				concurrent.delete(k);
+		};
+		Target lockedTarget = (k, kind) -> {
+			synchronized (locked) {
+				if (kind == 0)
+					Bench.consume(locked.search(k));
+				else if (kind == 1)
+					locked.insert(k, "");
+				else
+					locked.delete(k);
+			}
+		};
+
+		run(null, concurrentTarget, n, 90, 1, millis); //warming up both, not printed
+		run(null, lockedTarget, n, 90, 1, millis);
+		for (int reads : READ_PERCENTS) {
+			for (int threads = 1; threads <= maxThreads; threads *= 2) {
+				run("ConcurrentAVLTree", concurrentTarget, n, reads, threads, millis);
+				run("AVLTree + global lock", lockedTarget, n, reads, threads, millis);
+			}
+		}
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+
+	private static void run(String name, final Target target, final int n, final int reads, int threads, final long millis)
+			throws InterruptedException {
+		final LongAdder ops = new LongAdder();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] end = new long[1];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final long seed = t;
+			workers[t] = new Thread(() -> {
+				SplittableRandom rnd = new SplittableRandom(seed);
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				long count = 0;
+				while (System.nanoTime() < end[0]) {
+					for (int i = 0; i < 64; i++) { //checking the clock once per 64 operations
+						int k = rnd.nextInt(2 * n);
+						int kind = rnd.nextInt(100) < reads ? 0 : 1 + rnd.nextInt(2);
+						target.op(k, kind);
+					}
+					count += 64;
+				}
+				ops.add(count);
+			});
+			workers[t].start();
+		}
+		end[0] = System.nanoTime() + millis * 1000000;
+		start.countDown();
+		for (Thread worker : workers)
+			worker.join();
+		if (name != null)
+			System.out.printf("%-22s reads %3d%%  threads %2d  %,14.0f ops/s%n", name, reads, threads, ops.sum() * 1000.0 / millis);
+	}
+}
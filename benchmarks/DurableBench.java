@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ *
+ * DurableBench
+ *
+ * Inserts random keys into an in-memory AVLTree and into a DurableAVLTree with each SyncPolicy.
+ * NONE and ASYNC insert n keys from one thread (the time includes close, which forces the log).
+ * SYNC inserts syncOps keys from 1, 2, 4, .. maxThreads threads, every insert returning once it is
+ * on disk, so the threads share forces (group commit). The store is in dir, a temporary
+ * directory if it is not given.
+ *
+ * usage: java DurableBench [n] [maxThreads] [syncOps] [dir]   (default n = 1000000, maxThreads = 16, syncOps = 20000)
+ *
+ */
+
+public class DurableBench {
+
+	public static void main(String[] args) throws IOException {
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		final int syncOps = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		final Path dir = args.length > 3 ? Path.of(args[3]) : Files.createTempDirectory("durable");
+		final int[] keys = HeapFootprint.distinctKeys(n, 42);
+
+		Bench.run("AVLTree insert, in memory (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				AVLTree tree = new AVLTree();
+				for (int k : keys)
+					tree.insert(k, "value");
+				Bench.consume(tree.size());
+				return n;
+			}
+		});
+
+		for (final DurableAVLTree.SyncPolicy policy : new DurableAVLTree.SyncPolicy[] { DurableAVLTree.SyncPolicy.NONE,
+				DurableAVLTree.SyncPolicy.ASYNC }) {
+			final DurableAVLTree[] tree = new DurableAVLTree[1];
+			Bench.run("DurableAVLTree insert, " + policy + " (n=" + n + ")", new Bench.Iteration() {
+				public void setup() {
+					tree[0] = open(dir, policy);
+				}
+
+				public long run() {
+					DurableAVLTree t = tree[0];
+					for (int k : keys)
+						t.insert(k, "value");
+					close(t);
+					return n;
+				}
+			});
+		}
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			final int count = threads;
+			final DurableAVLTree[] tree = new DurableAVLTree[1];
+			Bench.run("DurableAVLTree insert, SYNC (" + syncOps + " ops, " + threads + " threads)", new Bench.Iteration() {
+				public void setup() {
+					tree[0] = open(dir, DurableAVLTree.SyncPolicy.SYNC);
+				}
+
+				public long run() {
+					final DurableAVLTree t = tree[0];
+					Thread[] workers = new Thread[count];
+					for (int j = 0; j < count; j++) {
+						final int first = j;
+						workers[j] = new Thread(() -> {
+							for (int i = first; i < syncOps; i += count)
+								t.insert(keys[i], "value");
+						});
+						workers[j].start();
+					}
+					for (Thread worker : workers) {
+						try {
+							worker.join();
+						} catch (InterruptedException e) {
+							throw new IllegalStateException(e);
+						}
+					}
+					close(t);
+					return syncOps;
+				}
+			});
+		}
+		clear(dir);
+		if (args.length <= 3)
+			Files.delete(dir);
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+
+	private static DurableAVLTree open(Path dir, DurableAVLTree.SyncPolicy policy) { //an empty store
+		try {
+			clear(dir);
+			return DurableAVLTree.open(dir, policy, DurableAVLTree.DEFAULT_CHECKPOINT_BYTES);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void close(DurableAVLTree tree) {
+		try {
+			Bench.consume(tree.size());
+			tree.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void clear(Path dir) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files)
+				Files.delete(file);
+		}
+	}
+}
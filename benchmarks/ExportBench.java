@@ -0,0 +1,53 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * ExportBench
+ *
+ * Copies all keys and info of a tree of n random keys to arrays: with keysToArray + infoToArray
+ * (two traversals), with entriesToArrays (one traversal), and with entriesToArrays on pools of
+ * 1, 2, 4, .. maxThreads workers.
+ *
+ * usage: java ExportBench [n] [maxThreads]   (default n = 1000000, maxThreads = available processors)
+ *
+ */
+
+public class ExportBench {
+
+	public static void main(String[] args) {
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		final AVLTree tree = new AVLTree();
+		for (int k : HeapFootprint.distinctKeys(n, 42))
+			tree.insert(k, "");
+		final int[] keys = new int[n];
+		final String[] infos = new String[n];
+
+		Bench.run("keysToArray+infoToArray (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(tree.keysToArray()[n / 2]);
+				Bench.consume(tree.infoToArray()[n / 2]);
+				return n;
+			}
+		});
+
+		Bench.run("entriesToArrays (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(tree.entriesToArrays(keys, infos));
+				return n;
+			}
+		});
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			Bench.run("entriesToArrays (n=" + n + ", " + threads + " workers)", new Bench.Iteration() {
+				public long run() {
+					Bench.consume(tree.entriesToArrays(keys, infos, pool));
+					return n;
+				}
+			});
+			pool.shutdown();
+		}
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
@@ -0,0 +1,93 @@
+import java.util.Random;
+
+/**
+ *
+ * HeapFootprint
+ *
+ * Compares the retained heap of an AVLTree using the shared virtual node
+ * with the original layout (two virtual nodes allocated per real node),
+ * and with ArrayAVLTree (nodes in parallel arrays).
+ * It also times an in-order walk (keysToArray) of each.
+ *
+ * usage: java HeapFootprint [n]   (default n = 1000000 random distinct keys)
+ *
+ */
+
+public class HeapFootprint {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int[] keys = distinctKeys(n, 42);
+
+		//measuring each layout twice, the first round warms up the JIT and the heap
+		for (int round = 0; round < 2; round++) {
+			measure("original layout", false, keys);
+			measure("shared virtual ", true, keys);
+			measureArray("array nodes    ", keys);
+		}
+	}
+
+	private static void measure(String name, boolean sharedVirtual, int[] keys) {
+		long before = usedHeap();
+		long start = System.nanoTime();
+		AVLTree tree = new AVLTree(sharedVirtual);
+		for (int k : keys)
+			tree.insert(k, "");
+		long time = System.nanoTime() - start;
+		long after = usedHeap();
+		start = System.nanoTime();
+		int[] sorted = tree.keysToArray();
+		long walk = System.nanoTime() - start;
+		report(name, tree.size(), after - before, time, walk);
+		if (tree.size() != sorted.length) //keeping the tree reachable until after the measurement
+			throw new IllegalStateException();
+	}
+
+	private static void measureArray(String name, int[] keys) {
+		long before = usedHeap();
+		long start = System.nanoTime();
+		ArrayAVLTree tree = new ArrayAVLTree();
+		for (int k : keys)
+			tree.insert(k, "");
+		long time = System.nanoTime() - start;
+		long after = usedHeap();
+		start = System.nanoTime();
+		int[] sorted = tree.keysToArray();
+		long walk = System.nanoTime() - start;
+		report(name, tree.size(), after - before, time, walk);
+		if (tree.size() != sorted.length)
+			throw new IllegalStateException();
+	}
+
+	private static void report(String name, int n, long bytes, long insertNanos, long walkNanos) {
+		System.out.printf("%s: %,d keys, %,d bytes retained, %.1f bytes/key, insert %.1f ns/op, keysToArray %.1f ns/key%n",
+				name, n, bytes, (double) bytes / n, (double) insertNanos / n, (double) walkNanos / n);
+	}
+
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) { //a few collections until the used heap stops shrinking
+			System.gc();
+			long now = rt.totalMemory() - rt.freeMemory();
+			if (now >= used)
+				break;
+			used = now;
+		}
+		return used;
+	}
+
+	static int[] distinctKeys(int n, long seed) {
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = i;
+		Random rnd = new Random(seed);
+		for (int i = n - 1; i > 0; i--) { //shuffling
+			int j = rnd.nextInt(i + 1);
+			int tmp = keys[i];
+			keys[i] = keys[j];
+			keys[j] = tmp;
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ *
+ * InsertDeleteBench
+ *
+ * Measures the write path of AVLTree: inserting n random distinct keys into an empty tree,
+ * inserting keys that are already in the tree, and deleting all n keys in random order.
+ * Run it on two revisions to compare write paths.
+ *
+ * usage: java InsertDeleteBench [n]   (default n = 1000000)
+ *
+ */
+
+public class InsertDeleteBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int[] keys = HeapFootprint.distinctKeys(n, 42);
+		final int[] deleteOrder = HeapFootprint.distinctKeys(n, 7);
+
+		Bench.run("insert (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				AVLTree tree = new AVLTree();
+				for (int k : keys)
+					Bench.consume(tree.insert(k, ""));
+				return keys.length;
+			}
+		});
+
+		Bench.run("insert duplicate (n=" + n + ")", new Bench.Iteration() {
+			AVLTree tree = build(keys);
+
+			public long run() {
+				for (int k : keys)
+					Bench.consume(tree.insert(k, ""));
+				return keys.length;
+			}
+		});
+
+		Bench.run("delete (n=" + n + ")", new Bench.Iteration() {
+			AVLTree tree;
+
+			public void setup() {
+				tree = build(keys);
+			}
+
+			public long run() {
+				for (int k : deleteOrder)
+					Bench.consume(tree.delete(k));
+				return deleteOrder.length;
+			}
+		});
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+
+	static AVLTree build(int[] keys) {
+		AVLTree tree = new AVLTree();
+		for (int k : keys)
+			tree.insert(k, "");
+		return tree;
+	}
+}
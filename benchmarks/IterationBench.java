@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+
+/**
+ *
+ * IterationBench
+ *
+ * Reads all keys and info of a tree of n random keys: with keysToArray + infoToArray (two passes),
+ * with forEach and with the lazy iterator (one pass each), and sums the keys with a sequential
+ * and a parallel stream. It also prints the sizes of the parts the spliterator splits into.
+ *
+ * usage: java IterationBench [n]   (default n = 1000000)
+ *
+ */
+
+public class IterationBench {
+
+	public static void main(String[] args) {
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final AVLTree tree = new AVLTree();
+		for (int k : HeapFootprint.distinctKeys(n, 42))
+			tree.insert(k, "");
+
+		Bench.run("keysToArray+infoToArray (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				int[] keys = tree.keysToArray();
+				String[] infos = tree.infoToArray();
+				Bench.consume(keys[n / 2]);
+				Bench.consume(infos[n / 2]);
+				return n;
+			}
+		});
+
+		Bench.run("forEach (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				long[] sum = new long[1];
+				tree.forEach((key, info) -> sum[0] += key + info.length());
+				Bench.consume(sum[0]);
+				return n;
+			}
+		});
+
+		Bench.run("iterator (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				long sum = 0;
+				for (AVLTree.EntryIterator it = tree.iterator(); it.hasNext();)
+					sum += it.nextInt() + it.info().length();
+				Bench.consume(sum);
+				return n;
+			}
+		});
+
+		Bench.run("stream().sum (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(tree.stream().mapToLong(AVLTree.IAVLNode::getKey).sum());
+				return n;
+			}
+		});
+
+		Bench.run("parallelStream().sum (n=" + n + ", " + Runtime.getRuntime().availableProcessors() + " cpus)", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(tree.parallelStream().mapToLong(AVLTree.IAVLNode::getKey).sum());
+				return n;
+			}
+		});
+
+		List<Spliterator<AVLTree.IAVLNode>> parts = new ArrayList<>();
+		parts.add(tree.spliterator());
+		for (int level = 0; level < 3; level++) { //splitting every part three times, as a parallel stream would
+			List<Spliterator<AVLTree.IAVLNode>> halves = new ArrayList<>();
+			for (Spliterator<AVLTree.IAVLNode> part : parts) {
+				Spliterator<AVLTree.IAVLNode> prefix = part.trySplit();
+				if (prefix != null)
+				halves.add(prefix);
+				halves.add(part);
+			}
+			parts = halves;
+		}
+		StringBuilder sizes = new StringBuilder("spliterator parts:");
+		for (Spliterator<AVLTree.IAVLNode> part : parts)
+			sizes.append(' ').append(part.estimateSize());
+		System.out.println(sizes);
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
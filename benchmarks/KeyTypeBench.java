@@ -0,0 +1,80 @@
+import java.util.Comparator;
+
+/**
+ *
+ * KeyTypeBench
+ *
+ * Search latency of int keys in AVLTree and IntIntAVLTree against Integer keys in ObjObjAVLTree,
+ * first while Integer is the only key type ObjObjAVLTree has seen, then after it also
+ * searched String keys, Long keys and keys with a Comparator, which makes its compare call megamorphic.
+ * Every search hits a key in the tree, in random order.
+ *
+ * usage: java KeyTypeBench [n]   (default n = 1000000)
+ *
+ */
+
+public class KeyTypeBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int[] keys = HeapFootprint.distinctKeys(n, 42);
+		final int[] lookups = HeapFootprint.distinctKeys(n, 7);
+		final Integer[] boxedLookups = new Integer[n];
+		for (int j = 0; j < n; j++)
+			boxedLookups[j] = lookups[j];
+
+		final AVLTree tree = InsertDeleteBench.build(keys);
+		final IntIntAVLTree intTree = new IntIntAVLTree();
+		final ObjObjAVLTree<Integer, String> objTree = new ObjObjAVLTree<>();
+		for (int k : keys) {
+			intTree.insert(k, k);
+			objTree.insert(k, "");
+		}
+
+		searchAll("before", n, tree, intTree, objTree, lookups, boxedLookups);
+
+		//the other key types, each searched long enough to reach the compiled code
+		ObjObjAVLTree<String, String> strings = new ObjObjAVLTree<>();
+		ObjObjAVLTree<Long, String> longs = new ObjObjAVLTree<>();
+		ObjObjAVLTree<Integer, String> reversed = new ObjObjAVLTree<>(Comparator.reverseOrder());
+		for (int j = 0; j < 100000; j++) {
+			strings.insert(Integer.toString(keys[j]), "");
+			longs.insert((long) keys[j], "");
+			reversed.insert(keys[j], "");
+		}
+		for (int round = 0; round < 20; round++)
+			for (int j = 0; j < 100000; j++) {
+				Bench.consume(strings.search(Integer.toString(lookups[j])));
+				Bench.consume(longs.search((long) lookups[j]));
+				Bench.consume(reversed.search(boxedLookups[j]));
+			}
+
+		searchAll("after other key types", n, tree, intTree, objTree, lookups, boxedLookups);
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+
+	private static void searchAll(String when, int n, final AVLTree tree, final IntIntAVLTree intTree,
+			final ObjObjAVLTree<Integer, String> objTree, final int[] lookups, final Integer[] boxedLookups) {
+		Bench.run("AVLTree.search int, " + when, new Bench.Iteration() {
+			public long run() {
+				for (int k : lookups)
+					Bench.consume(tree.search(k));
+				return lookups.length;
+			}
+		});
+		Bench.run("IntIntAVLTree.search int, " + when, new Bench.Iteration() {
+			public long run() {
+				for (int k : lookups)
+					Bench.consume(intTree.search(k, -1));
+				return lookups.length;
+			}
+		});
+		Bench.run("ObjObjAVLTree.search Integer, " + when, new Bench.Iteration() {
+			public long run() {
+				for (Integer k : boxedLookups)
+					Bench.consume(objTree.search(k));
+				return boxedLookups.length;
+			}
+		});
+	}
+}
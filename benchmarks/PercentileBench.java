@@ -0,0 +1,38 @@
+/**
+ *
+ * PercentileBench
+ *
+ * Reads the p50 and p99 keys of a tree of n keys, through keysToArray (the whole tree copied to an array)
+ * and through keyAtPercentile (one O(log n) descent on the subtree sizes).
+ *
+ * usage: java PercentileBench [n]   (default n = 1000000)
+ *
+ */
+
+public class PercentileBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final AVLTree tree = InsertDeleteBench.build(HeapFootprint.distinctKeys(n, 42));
+
+		Bench.run("p50+p99 via keysToArray (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				int[] keys = tree.keysToArray();
+				Bench.consume(keys[(int) Math.ceil(0.50 * keys.length) - 1]);
+				Bench.consume(keys[(int) Math.ceil(0.99 * keys.length) - 1]);
+				return 1;
+			}
+		});
+
+		Bench.run("p50+p99 via keyAtPercentile (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				for (int j = 0; j < 100000; j++) {
+					Bench.consume(tree.keyAtPercentile(50));
+					Bench.consume(tree.keyAtPercentile(99));
+				}
+				return 100000;
+			}
+		});
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
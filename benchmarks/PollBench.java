@@ -0,0 +1,74 @@
+import java.util.SplittableRandom;
+
+/**
+ *
+ * PollBench
+ *
+ * A tree of n deadlines used as a priority queue: every operation removes the earliest deadline
+ * and inserts a new one later than all of them, once with select(0) + delete and once with pollFirst.
+ * The tree keeps its n keys.
+ *
+ * usage: java PollBench [n]   (default n = 1000000)
+ *
+ */
+
+public class PollBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int ops = n;
+		final int[] gaps = new int[ops];
+		SplittableRandom rnd = new SplittableRandom(42);
+		for (int j = 0; j < ops; j++)
+			gaps[j] = 1 + rnd.nextInt(8);
+		final AVLTree[] tree = new AVLTree[1];
+		final int[] last = new int[1];
+		final int size = n;
+
+		Bench.run("select(0)+delete+insert (n=" + n + ")", new Bench.Iteration() {
+			public void setup() {
+				tree[0] = build(size, last);
+			}
+
+			public long run() {
+				AVLTree t = tree[0];
+				int deadline = last[0];
+				for (int gap : gaps) {
+					Bench.consume(t.delete(t.select(0)));
+					deadline += gap;
+					Bench.consume(t.insert(deadline, ""));
+				}
+				return ops;
+			}
+		});
+
+		Bench.run("pollFirst+insert (n=" + n + ")", new Bench.Iteration() {
+			public void setup() {
+				tree[0] = build(size, last);
+			}
+
+			public long run() {
+				AVLTree t = tree[0];
+				int deadline = last[0];
+				for (int gap : gaps) {
+					Bench.consume(t.pollFirst());
+					deadline += gap;
+					Bench.consume(t.insert(deadline, ""));
+				}
+				return ops;
+			}
+		});
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+
+	private static AVLTree build(int n, int[] last) { //deadlines 0, 4, 8, ..
+		int[] keys = new int[n];
+		String[] infos = new String[n];
+		for (int j = 0; j < n; j++) {
+			keys[j] = 4 * j;
+			infos[j] = "";
+		}
+		last[0] = 4 * (n - 1);
+		return AVLTree.fromSorted(keys, infos);
+	}
+}
@@ -0,0 +1,53 @@
+import java.util.Arrays;
+
+/**
+ *
+ * RangeDeleteBench
+ *
+ * Expires the oldest keys of a tree of n consecutive keys (timestamps) in windows of w keys,
+ * with one delete per key and with one deleteRange per window. Every iteration starts
+ * from a freshly built tree (not measured) and expires half of it.
+ *
+ * usage: java RangeDeleteBench [n] [w]   (default n = 1000000, w = 1000)
+ *
+ */
+
+public class RangeDeleteBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int w = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		final int[] keys = new int[n];
+		for (int j = 0; j < n; j++)
+			keys[j] = j;
+		final String[] infos = new String[n];
+		Arrays.fill(infos, "");
+		final int windows = n / 2 / w;
+		final AVLTree[] tree = new AVLTree[1];
+
+		Bench.run("delete per key (n=" + n + ", w=" + w + ")", new Bench.Iteration() {
+			public void setup() {
+				tree[0] = AVLTree.fromSorted(keys, infos);
+			}
+
+			public long run() {
+				for (int k = 0; k < windows * w; k++)
+					Bench.consume(tree[0].delete(k));
+				return windows;
+			}
+		});
+
+		Bench.run("deleteRange per window (n=" + n + ", w=" + w + ")", new Bench.Iteration() {
+			public void setup() {
+				tree[0] = AVLTree.fromSorted(keys, infos);
+			}
+
+			public long run() {
+				for (int j = 0; j < windows; j++)
+					Bench.consume(tree[0].deleteRange(j * w, j * w + w - 1));
+				return windows;
+			}
+		});
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
@@ -0,0 +1,61 @@
+import java.util.Random;
+
+/**
+ *
+ * RangeScanBench
+ *
+ * Reads windows of 50 consecutive keys from random places in a tree of n keys,
+ * through keysToArray (copying the whole tree), rangeScan and a Cursor.
+ *
+ * usage: java RangeScanBench [n]   (default n = 1000000)
+ *
+ */
+
+public class RangeScanBench {
+
+	private static final int WINDOW = 50;
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final AVLTree tree = InsertDeleteBench.build(HeapFootprint.distinctKeys(n, 42));
+		final int[] starts = new int[10000];
+		Random rnd = new Random(7);
+		for (int j = 0; j < starts.length; j++)
+			starts[j] = rnd.nextInt(n);
+		final AVLTree.IntObjConsumer consumer = new AVLTree.IntObjConsumer() {
+			public void accept(int key, String info) {
+				Bench.consume(key);
+			}
+		};
+
+		Bench.run("window via keysToArray (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				int[] keys = tree.keysToArray();
+				for (int j = starts[0]; j < Math.min(keys.length, starts[0] + WINDOW); j++)
+					Bench.consume(keys[j]);
+				return 1;
+			}
+		});
+
+		Bench.run("window via rangeScan (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				for (int lo : starts)
+					Bench.consume(tree.rangeScan(lo, lo + WINDOW - 1, consumer));
+				return starts.length;
+			}
+		});
+
+		Bench.run("window via Cursor (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				AVLTree.Cursor cursor = tree.cursor();
+				for (int lo : starts) {
+					cursor.seek(lo);
+					for (int j = 0; j < WINDOW && cursor.valid(); j++, cursor.next())
+						Bench.consume(cursor.key());
+				}
+				return starts.length;
+			}
+		});
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
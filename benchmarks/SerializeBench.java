@@ -0,0 +1,99 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ *
+ * SerializeBench
+ *
+ * Saves a tree of n random keys (gaps of 1 to 8, info "user" + key) to a file and loads it back:
+ * as text lines from keysToArray/infoToArray reloaded with n inserts, and as an AVLTreeSnapshot,
+ * uncompressed and compressed. Prints the file sizes.
+ *
+ * usage: java SerializeBench [n]   (default n = 1000000)
+ *
+ */
+
+public class SerializeBench {
+
+	public static void main(String[] args) throws IOException {
+		final int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final AVLTree tree = new AVLTree();
+		int[] order = HeapFootprint.distinctKeys(n, 42);
+		for (int j : order)
+			tree.insert(j * 8 + j % 7, "user" + j);
+		final Path dir = Files.createTempDirectory("serialize");
+		final Path text = dir.resolve("tree.txt");
+		final Path plain = dir.resolve("tree.avls");
+		final Path deflated = dir.resolve("tree.avls.z");
+
+		Bench.run("text write (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				int[] keys = tree.keysToArray();
+				String[] infos = tree.infoToArray();
+				try (BufferedWriter out = Files.newBufferedWriter(text, StandardCharsets.UTF_8)) {
+					for (int j = 0; j < keys.length; j++) {
+						out.write(Integer.toString(keys[j]));
+						out.write('\t');
+						out.write(infos[j]);
+						out.write('\n');
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return n;
+			}
+		});
+		Bench.run("text read + insert (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				AVLTree loaded = new AVLTree();
+				try (BufferedReader in = Files.newBufferedReader(text, StandardCharsets.UTF_8)) {
+					for (String line = in.readLine(); line != null; line = in.readLine()) {
+						int tab = line.indexOf('\t');
+						loaded.insert(Integer.parseInt(line.substring(0, tab)), line.substring(tab + 1));
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				Bench.consume(loaded.size());
+				return n;
+			}
+		});
+
+		for (final boolean compress : new boolean[] { false, true }) {
+			final Path path = compress ? deflated : plain;
+			String name = compress ? "compressed" : "uncompressed";
+			Bench.run("snapshot write, " + name + " (n=" + n + ")", new Bench.Iteration() {
+				public long run() {
+					try {
+						Bench.consume(AVLTreeSnapshot.write(tree, path, compress));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					return n;
+				}
+			});
+			Bench.run("snapshot read, " + name + " (n=" + n + ")", new Bench.Iteration() {
+				public long run() {
+					try {
+						Bench.consume(AVLTreeSnapshot.read(path).size());
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					return n;
+				}
+			});
+		}
+
+		System.out.printf("file sizes: text %,d bytes, snapshot %,d bytes, compressed snapshot %,d bytes%n",
+				Files.size(text), Files.size(plain), Files.size(deflated));
+		for (Path path : new Path[] { text, plain, deflated })
+			Files.delete(path);
+		Files.delete(dir);
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
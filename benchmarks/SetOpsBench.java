@@ -0,0 +1,79 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * SetOpsBench
+ *
+ * Times union, intersection and difference of a tree of n keys with a tree of m keys
+ * on ForkJoinPools of 1, 2, 4 .. P workers, and the same union done with m inserts for reference.
+ * The set operations use up their inputs, so both trees are built again (not measured) before every iteration.
+ * Half of the m keys are in the big tree. On a machine with one core only the one worker rows mean anything.
+ *
+ * usage: java SetOpsBench [n] [m] [maxThreads]   (default n = 1000000, m = n, maxThreads = available processors)
+ *
+ */
+
+public class SetOpsBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int m = args.length > 1 ? Integer.parseInt(args[1]) : n;
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		final int[] big = new int[n];
+		for (int j = 0; j < n; j++)
+			big[j] = 2 * j; //even keys
+		final int[] small = new int[m];
+		SplittableRandom rnd = new SplittableRandom(42);
+		for (int j = 0; j < m; j++)
+			small[j] = rnd.nextInt(2 * n); //even ones are in the big tree
+		Arrays.sort(small);
+		int distinct = 0;
+		for (int j = 0; j < m; j++)
+			if (j == 0 || small[j] != small[j - 1])
+				small[distinct++] = small[j];
+		final int[] smallKeys = Arrays.copyOf(small, distinct);
+		final String[] bigInfos = new String[n];
+		Arrays.fill(bigInfos, "");
+		final String[] smallInfos = new String[distinct];
+		Arrays.fill(smallInfos, "");
+		final AVLTree[] trees = new AVLTree[2];
+
+		Bench.run("insert one by one (n=" + n + ", m=" + distinct + ")", new Bench.Iteration() {
+			public void setup() {
+				trees[0] = AVLTree.fromSorted(big, bigInfos);
+			}
+
+			public long run() {
+				for (int k : smallKeys)
+					Bench.consume(trees[0].insert(k, ""));
+				return 1;
+			}
+		});
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			for (final char op : new char[] { 'U', 'I', 'D' }) {
+				String name = op == 'U' ? "union" : op == 'I' ? "intersection" : "difference";
+				Bench.run(name + " (n=" + n + ", m=" + distinct + ", " + threads + " workers)", new Bench.Iteration() {
+					public void setup() {
+						trees[0] = AVLTree.fromSorted(big, bigInfos);
+						trees[1] = AVLTree.fromSorted(smallKeys, smallInfos);
+					}
+
+					public long run() {
+						if (op == 'U')
+							Bench.consume(trees[0].union(trees[1], pool));
+						else if (op == 'I')
+							Bench.consume(trees[0].intersection(trees[1], pool));
+						else
+							Bench.consume(trees[0].difference(trees[1], pool));
+						return 1;
+					}
+				});
+			}
+			pool.shutdown();
+		}
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+}
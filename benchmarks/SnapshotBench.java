@@ -0,0 +1,92 @@
+/**
+ *
+ * SnapshotBench
+ *
+ * Compares PersistentAVLTree with AVLTree: insert and delete of n random keys,
+ * a consistent copy of n keys (snapshot() against keysToArray()+infoToArray()),
+ * and the heap kept by each retained version after one more insert.
+ *
+ * usage: java SnapshotBench [n]   (default n = 1000000)
+ *
+ */
+
+public class SnapshotBench {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int[] keys = HeapFootprint.distinctKeys(n, 42);
+
+		Bench.run("AVLTree insert (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(InsertDeleteBench.build(keys));
+				return keys.length;
+			}
+		});
+
+		Bench.run("PersistentAVLTree insert (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(build(keys));
+				return keys.length;
+			}
+		});
+
+		Bench.run("PersistentAVLTree delete (n=" + n + ")", new Bench.Iteration() {
+			PersistentAVLTree tree;
+
+			public void setup() {
+				tree = build(keys);
+			}
+
+			public long run() {
+				for (int k : keys)
+					Bench.consume(tree.delete(k));
+				return keys.length;
+			}
+		});
+
+		final AVLTree avl = InsertDeleteBench.build(keys);
+		Bench.run("AVLTree keysToArray+infoToArray (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				Bench.consume(avl.keysToArray());
+				Bench.consume(avl.infoToArray());
+				return 1;
+			}
+		});
+
+		final PersistentAVLTree persistent = build(keys);
+		Bench.run("PersistentAVLTree snapshot (n=" + n + ")", new Bench.Iteration() {
+			public long run() {
+				for (int j = 0; j < 1000000; j++)
+					Bench.consume(persistent.snapshot());
+				return 1000000;
+			}
+		});
+
+		//retaining a snapshot after each of m inserts, the heap they keep is the copied routes
+		int m = 10000;
+		PersistentAVLTree[] versions = new PersistentAVLTree[m];
+		long before = usedHeap();
+		for (int j = 0; j < m; j++) {
+			persistent.insert(n + j, "");
+			versions[j] = persistent.snapshot();
+		}
+		long after = usedHeap();
+		System.out.printf("%d retained versions: %.0f bytes per version%n", m, (double) (after - before) / m);
+		Bench.consume(versions[m - 1].size());
+		System.out.println("(sink " + Bench.sink() + ")");
+	}
+
+	static PersistentAVLTree build(int[] keys) {
+		PersistentAVLTree tree = new PersistentAVLTree();
+		for (int k : keys)
+			tree.insert(k, "");
+		return tree;
+	}
+
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
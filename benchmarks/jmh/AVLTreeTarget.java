@@ -0,0 +1,45 @@
+import avltree.jmh.Tree;
+
+/**
+ *
+ * AVLTreeTarget
+ *
+ * AVLTree behind the Tree interface of the JMH benchmarks (see Tree for why it's needed).
+ *
+ */
+
+public class AVLTreeTarget implements Tree {
+
+	private AVLTree tree = new AVLTree();
+
+	public int insert(int k, String i) {
+		return tree.insert(k, i);
+	}
+
+	public int delete(int k) {
+		return tree.delete(k);
+	}
+
+	public String search(int k) {
+		return tree.search(k);
+	}
+
+	public int splitJoin(int x) {
+		String info = tree.search(x); //split drops the node of x
+		AVLTree[] parts = tree.split(x);
+		tree = parts[0];
+		return tree.join(tree.new AVLNode(x, info), parts[1]);
+	}
+
+	public int[] keysToArray() {
+		return tree.keysToArray();
+	}
+
+	public String[] infoToArray() {
+		return tree.infoToArray();
+	}
+
+	public int size() {
+		return tree.size();
+	}
+}
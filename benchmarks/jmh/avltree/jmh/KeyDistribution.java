@@ -0,0 +1,105 @@
+package avltree.jmh;
+
+import java.util.SplittableRandom;
+
+/**
+ *
+ * KeyDistribution
+ *
+ * How the benchmarks load a tree of n keys and which keys they access afterwards.
+ * The tree holds the even keys 0, 2, .. 2(n-1); key index i stands for the key 2i,
+ * and 2i+1 is a key next to it that is not in the tree.
+ *
+ *   SEQUENTIAL  keys are loaded and accessed in increasing order
+ *   RANDOM      keys are loaded in random order and accessed uniformly
+ *   ZIPFIAN     keys are loaded in random order, accesses are Zipfian (theta = 0.99) over
+ *               hot keys scattered through the key range
+ *   ZIGZAG      keys are loaded and accessed alternately from both ends (0, n-1, 1, n-2 ..),
+ *               so every insert lands on the opposite side of the tree from the one before
+ *
+ */
+
+public enum KeyDistribution {
+	SEQUENTIAL, RANDOM, ZIPFIAN, ZIGZAG;
+
+	private static final double THETA = 0.99;
+
+	/**
+	 * public int[] loadOrder(int n, long seed)
+	 *
+	 * returns the key indexes 0..n-1 in the order they are inserted
+	 */
+	public int[] loadOrder(int n, long seed) {
+		int[] order = new int[n];
+		for (int j = 0; j < n; j++)
+			order[j] = this == ZIGZAG ? zigzag(j, n) : j;
+		if (this == RANDOM || this == ZIPFIAN) {
+			SplittableRandom rnd = new SplittableRandom(seed);
+			for (int j = n - 1; j > 0; j--) { //shuffling
+				int r = rnd.nextInt(j + 1);
+				int tmp = order[j];
+				order[j] = order[r];
+				order[r] = tmp;
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * public int[] accesses(int n, int count, long seed)
+	 *
+	 * returns count key indexes in [0, n) drawn from this distribution
+	 */
+	public int[] accesses(int n, int count, long seed) {
+		int[] keys = new int[count];
+		SplittableRandom rnd = new SplittableRandom(seed);
+		if (this == ZIPFIAN) {
+			Zipf zipf = new Zipf(n);
+			for (int j = 0; j < count; j++) //scattering the ranks, so the hot keys are not all in one subtree
+				keys[j] = (int) (zipf.next(rnd) * 0x9E3779B1L % n);
+			return keys;
+		}
+		int start = rnd.nextInt(n);
+		for (int j = 0; j < count; j++) {
+			int step = (int) ((start + (long) j) % n);
+			keys[j] = this == RANDOM ? rnd.nextInt(n) : this == ZIGZAG ? zigzag(step, n) : step;
+		}
+		return keys;
+	}
+
+	private static int zigzag(int j, int n) { //0, n-1, 1, n-2, ..
+		return (j & 1) == 0 ? j >>> 1 : n - 1 - (j >>> 1);
+	}
+
+	/*
+	 * Zipfian ranks in [0, n) with the rejection-free approximation of Gray et al.,
+	 * "Quickly Generating Billion-Record Synthetic Databases" (as in YCSB)
+	 */
+	private static final class Zipf {
+		private final int n;
+		private final double zetan;
+		private final double alpha;
+		private final double eta;
+
+		Zipf(int n) {
+			this.n = n;
+			double zeta = 0;
+			for (int i = 1; i <= n; i++)
+				zeta += 1 / Math.pow(i, THETA);
+			zetan = zeta;
+			alpha = 1 / (1 - THETA);
+			double zeta2 = 1 + Math.pow(0.5, THETA);
+			eta = (1 - Math.pow(2.0 / n, 1 - THETA)) / (1 - zeta2 / zetan);
+		}
+
+		long next(SplittableRandom rnd) {
+			double u = rnd.nextDouble();
+			double uz = u * zetan;
+			if (uz < 1)
+				return 0;
+			if (uz < 1 + Math.pow(0.5, THETA))
+				return Math.min(1, n - 1);
+			return Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package avltree.jmh;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * MixedWorkloadBench
+ *
+ * A mix of searches and writes on a tree of size keys: readPercent of the operations are searches
+ * of keys in the tree, the rest insert and delete (alternately) keys next to them that aren't.
+ * The keys are drawn from distribution.
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixedWorkloadBench {
+
+	private static final int ACCESSES = 1 << 16;
+
+	@Param({ "1000", "100000", "10000000" })
+	int size;
+
+	@Param({ "RANDOM", "ZIPFIAN" })
+	KeyDistribution distribution;
+
+	@Param({ "50", "90", "99" })
+	int readPercent;
+
+	private Tree tree;
+	private int[] accesses;
+	private boolean[] reads;
+	private int next;
+	private boolean insertNext = true;
+
+	@Setup(Level.Trial)
+	public void load() {
+		tree = Tree.newAVLTree();
+		for (int i : distribution.loadOrder(size, 42))
+			tree.insert(2 * i, "");
+		accesses = distribution.accesses(size, ACCESSES, 7);
+		reads = new boolean[ACCESSES];
+		SplittableRandom rnd = new SplittableRandom(11);
+		for (int j = 0; j < ACCESSES; j++)
+			reads[j] = rnd.nextInt(100) < readPercent;
+	}
+
+	@Benchmark
+	public Object operation() {
+		int j = next++ & (ACCESSES - 1);
+		int k = 2 * accesses[j];
+		if (reads[j])
+			return tree.search(k);
+		insertNext = !insertNext;
+		return insertNext ? tree.delete(k + 1) : tree.insert(k + 1, "");
+	}
+}
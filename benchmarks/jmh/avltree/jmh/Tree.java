@@ -0,0 +1,48 @@
+package avltree.jmh;
+
+/**
+ *
+ * Tree
+ *
+ * The operations the JMH benchmarks measure. JMH does not accept benchmarks in the default package,
+ * and classes in a named package can't refer to AVLTree, so the benchmarks call the tree through
+ * this interface. AVLTreeTarget (default package) implements it and is loaded once per trial
+ * by name; the calls themselves are plain interface calls with a single implementation, which the JIT inlines.
+ *
+ */
+
+public interface Tree {
+
+	int insert(int k, String i);
+
+	int delete(int k);
+
+	String search(int k);
+
+	/**
+	 * int splitJoin(int x)
+	 *
+	 * splits the tree at x, which is in the tree, and joins the two halves back with a new node for x.
+	 * returns the result of join
+	 */
+	int splitJoin(int x);
+
+	int[] keysToArray();
+
+	String[] infoToArray();
+
+	int size();
+
+	/**
+	 * static Tree newAVLTree()
+	 *
+	 * returns an empty AVLTree behind this interface
+	 */
+	static Tree newAVLTree() {
+		try {
+			return (Tree) Class.forName("AVLTreeTarget").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("AVLTreeTarget is not on the class path", e);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package avltree.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * TreeOpsBench
+ *
+ * Every public AVLTree operation on a tree of size keys loaded in the order of distribution.
+ * insertDelete inserts a key that is not in the tree and deletes it again, and splitJoin splits
+ * at a key and joins the halves back, so the tree is the same size after every operation.
+ * keysToArray and infoToArray walk the whole tree (one operation is n keys).
+ *
+ * Allocation rates come from the gc profiler: java -jar target/benchmarks.jar TreeOpsBench -prof gc
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeOpsBench {
+
+	private static final int ACCESSES = 1 << 16; //a power of 2, the benchmarks cycle through them
+
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	int size;
+
+	@Param({ "SEQUENTIAL", "RANDOM", "ZIPFIAN", "ZIGZAG" })
+	KeyDistribution distribution;
+
+	private Tree tree;
+	private int[] accesses;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void load() {
+		tree = Tree.newAVLTree();
+		for (int i : distribution.loadOrder(size, 42))
+			tree.insert(2 * i, "");
+		accesses = distribution.accesses(size, ACCESSES, 7);
+	}
+
+	private int nextIndex() {
+		return accesses[next++ & (ACCESSES - 1)];
+	}
+
+	@Benchmark
+	public String search() {
+		return tree.search(2 * nextIndex());
+	}
+
+	@Benchmark
+	public String searchMiss() {
+		return tree.search(2 * nextIndex() + 1);
+	}
+
+	@Benchmark
+	public int insertDelete() {
+		int k = 2 * nextIndex() + 1;
+		return tree.insert(k, "") + tree.delete(k);
+	}
+
+	@Benchmark
+	public int splitJoin() {
+		return tree.splitJoin(2 * nextIndex());
+	}
+
+	@Benchmark
+	public int[] keysToArray() {
+		return tree.keysToArray();
+	}
+
+	@Benchmark
+	public String[] infoToArray() {
+		return tree.infoToArray();
+	}
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * GenerateTrees
+ *
+ * Writes IntIntAVLTree.java, IntLongAVLTree.java, LongObjAVLTree.java and ObjObjAVLTree.java
+ * from templates/SpecializedAVLTree.template, so the algorithm has one source.
+ *
+ * template syntax:
+ *  ${Name}                  replaced by the variant's value for Name (see VARIANTS)
+ *  //#if flag, //#if !flag  on a line of their own, keep the lines up to the matching //#else
+ *  //#else, //#endif        or //#endif if the variant has (or hasn't) the flag. they may nest
+ *
+ * usage, from the top of the repository:
+ *  java templates/GenerateTrees.java           rewrites the generated classes
+ *  java templates/GenerateTrees.java --check   exits with 1 if a class differs from the template
+ *
+ */
+
+public class GenerateTrees {
+
+	private static final Path TEMPLATE = Paths.get("templates", "SpecializedAVLTree.template");
+
+	private static final List<Variant> VARIANTS = List.of(
+			new Variant("IntIntAVLTree", Set.of("primitive"), values(
+					"TreeT", "IntIntAVLTree", "TreeArgs", "", "Diamond", "", "Static", "",
+					"Node", "Node", "NodeAny", "Node",
+					"K", "int", "KArray", "int", "V", "int", "VArray", "int", "KeyDoc", "int", "InfoDoc", "int")),
+			new Variant("IntLongAVLTree", Set.of("primitive"), values(
+					"TreeT", "IntLongAVLTree", "TreeArgs", "", "Diamond", "", "Static", "",
+					"Node", "Node", "NodeAny", "Node",
+					"K", "int", "KArray", "int", "V", "long", "VArray", "long", "KeyDoc", "int", "InfoDoc", "long")),
+			new Variant("LongObjAVLTree", Set.of(), values(
+					"TreeT", "LongObjAVLTree<V>", "TreeArgs", "", "Diamond", "<>", "Static", "<V> ",
+					"Node", "Node<V>", "NodeAny", "Node<?>",
+					"K", "long", "KArray", "long", "V", "V", "VArray", "Object", "KeyDoc", "long", "InfoDoc", "generic (V)")),
+			new Variant("ObjObjAVLTree", Set.of("comparator"), values(
+					"TreeT", "ObjObjAVLTree<K, V>", "TreeArgs", "comparator", "Diamond", "<>", "Static", "<K, V> ",
+					"Node", "Node<K, V>", "NodeAny", "Node<?, ?>",
+					"K", "K", "KArray", "Object", "V", "V", "VArray", "Object", "KeyDoc", "generic (K)", "InfoDoc", "generic (V)")));
+
+	private record Variant(String tree, Set<String> flags, Map<String, String> values) {
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean check = args.length > 0 && args[0].equals("--check");
+		String template = Files.readString(TEMPLATE, StandardCharsets.UTF_8);
+		List<Path> stale = new ArrayList<>();
+		for (Variant variant : VARIANTS) {
+			String source = generate(template, variant);
+			Path file = Paths.get(variant.tree() + ".java");
+			boolean same = Files.exists(file) && Files.readString(file, StandardCharsets.UTF_8).equals(source);
+			if (same)
+				continue;
+			if (check)
+				stale.add(file);
+			else {
+				Files.writeString(file, source, StandardCharsets.UTF_8);
+				System.out.println("wrote " + file);
+			}
+		}
+		if (!stale.isEmpty()) {
+			System.err.println("not generated from " + TEMPLATE + ": " + stale);
+			System.exit(1);
+		}
+	}
+
+	static String generate(String template, Variant variant) {
+		Map<String, String> values = new LinkedHashMap<>(variant.values());
+		values.put("Tree", variant.tree());
+		List<String> out = new ArrayList<>();
+		Deque<boolean[]> conditions = new ArrayDeque<>(); //per open //#if: {its branch is kept, the enclosing one is}
+		boolean keep = true;
+		int lineNumber = 0;
+		for (String line : template.split("\n", -1)) {
+			lineNumber++;
+			String directive = line.trim();
+			if (directive.startsWith("//#if ")) {
+				String flag = directive.substring(6).trim();
+				boolean holds = flag.startsWith("!") ? !variant.flags().contains(flag.substring(1))
+						: variant.flags().contains(flag);
+				conditions.push(new boolean[] { holds, keep });
+				keep = keep && holds;
+			} else if (directive.equals("//#else")) {
+				boolean[] condition = open(conditions, lineNumber);
+				condition[0] = !condition[0];
+				keep = condition[1] && condition[0];
+			} else if (directive.equals("//#endif")) {
+				keep = open(conditions, lineNumber)[1];
+				conditions.pop();
+			} else if (keep)
+				out.add(substitute(line, values, lineNumber));
+		}
+		if (!conditions.isEmpty())
+			throw new IllegalStateException(TEMPLATE + ": " + conditions.size() + " //#if without //#endif");
+		return String.join("\n", out);
+	}
+
+	private static boolean[] open(Deque<boolean[]> conditions, int lineNumber) {
+		if (conditions.isEmpty())
+			throw new IllegalStateException(TEMPLATE + ":" + lineNumber + ": no //#if to close");
+		return conditions.peek();
+	}
+
+	private static String substitute(String line, Map<String, String> values, int lineNumber) {
+		StringBuilder out = new StringBuilder();
+		int from = 0;
+		for (int at = line.indexOf("${"); at >= 0; at = line.indexOf("${", from)) {
+			int end = line.indexOf('}', at);
+			String name = end < 0 ? null : line.substring(at + 2, end);
+			if (name == null || !values.containsKey(name))
+				throw new IllegalStateException(TEMPLATE + ":" + lineNumber + ": unknown token in " + line.trim());
+			out.append(line, from, at).append(values.get(name));
+			from = end + 1;
+		}
+		return out.append(line.substring(from)).toString();
+	}
+
+	private static Map<String, String> values(String... pairs) {
+		Map<String, String> values = new LinkedHashMap<>();
+		for (int j = 0; j < pairs.length; j += 2)
+			values.put(pairs[j], pairs[j + 1]);
+		return values;
+	}
+}